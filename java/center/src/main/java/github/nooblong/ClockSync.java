@@ -0,0 +1,237 @@
+package github.nooblong;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 主机与设备时钟同步
+ * 类似NTP: 每轮交换多次时间，取往返时间最短的样本估计设备时钟偏移，
+ * 再对多轮偏移做线性回归估计漂移，用于把主机时间换算为设备时间
+ *
+ * 每个样本: t0 主机发送, tDevice 设备时间(微秒), t3 主机接收
+ *   偏移 = tDevice - (t0 + t3) / 2
+ *   发送单程 = (tDevice - 偏移) - t0,  接收单程 = t3 - (tDevice - 偏移)
+ *
+ * 局限: 偏移按最短往返样本的中点计算，即假设该样本两个方向的单程延迟相等。
+ * 链路不对称 (如发送和接收的轮询间隔不同) 会全部计入偏移，无法从往返时间中测出；
+ * 因此最优样本的发送和接收单程总是各占一半，单程统计只反映各样本相对最优样本的排队差异，
+ * 不是实际测得的方向不对称。
+ */
+public class ClockSync {
+
+    // 参与漂移估计的最近轮数
+    private static final int DRIFT_WINDOW = 16;
+
+    private final HidController controller;
+    private final int samplesPerRound;
+    private final long intervalMs;
+    private final LatencyRecorder sendLatency = new LatencyRecorder();
+    private final LatencyRecorder receiveLatency = new LatencyRecorder();
+    // 每轮结果: {主机时间(ns), 偏移(ns)}
+    private final ArrayDeque<long[]> rounds = new ArrayDeque<>();
+    private ScheduledExecutorService executor;
+
+    private volatile boolean synced = false;
+    private volatile long referenceHostNanos;
+    private volatile long referenceOffsetNanos;
+    private volatile double drift = 0;
+    private volatile long minRttNanos = Long.MAX_VALUE;
+
+    /**
+     * @param controller 控制器
+     * @param samplesPerRound 每轮交换次数
+     * @param intervalMs 重新同步间隔
+     */
+    public ClockSync(HidController controller, int samplesPerRound, long intervalMs) {
+        this.controller = controller;
+        this.samplesPerRound = Math.max(1, samplesPerRound);
+        this.intervalMs = Math.max(1000, intervalMs);
+    }
+
+    /**
+     * 立即同步一次，之后按间隔定期同步
+     */
+    public synchronized void start() {
+        if (executor != null) {
+            return;
+        }
+        executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "clock-sync");
+            t.setDaemon(true);
+            return t;
+        });
+        executor.scheduleWithFixedDelay(() -> {
+            try {
+                syncRound();
+            } catch (Exception e) {
+                System.err.println("时钟同步出错: " + e.getMessage());
+            }
+        }, 0, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    /**
+     * 执行一轮同步
+     * @return 是否至少得到一个有效样本
+     */
+    public boolean syncRound() {
+        long[] best = null;
+        long bestRtt = Long.MAX_VALUE;
+        long[][] samples = new long[samplesPerRound][];
+        int valid = 0;
+
+        for (int i = 0; i < samplesPerRound; i++) {
+            long[] sample = controller.exchangeTime();
+            if (sample == null) {
+                continue;
+            }
+            samples[valid++] = sample;
+            long rtt = sample[2] - sample[0];
+            if (rtt < bestRtt) {
+                bestRtt = rtt;
+                best = sample;
+            }
+        }
+        if (best == null) {
+            return false;
+        }
+
+        long hostMid = best[0] + bestRtt / 2;
+        long offset = best[1] * 1000 - hostMid;
+        minRttNanos = Math.min(minRttNanos, bestRtt);
+        updateEstimate(hostMid, offset);
+
+        // 用本轮最优偏移拆分每个样本的单程延迟
+        for (int i = 0; i < valid; i++) {
+            long[] sample = samples[i];
+            long deviceAsHost = toHostNanos(sample[1]);
+            sendLatency.record(deviceAsHost - sample[0]);
+            receiveLatency.record(sample[2] - deviceAsHost);
+        }
+        return true;
+    }
+
+    private synchronized void updateEstimate(long hostNanos, long offsetNanos) {
+        rounds.addLast(new long[] {hostNanos, offsetNanos});
+        if (rounds.size() > DRIFT_WINDOW) {
+            rounds.pollFirst();
+        }
+
+        if (rounds.size() >= 2) {
+            // 以第一轮为原点做最小二乘，避免大数相乘丢失精度
+            long[] origin = rounds.peekFirst();
+            double sumX = 0, sumY = 0, sumXX = 0, sumXY = 0;
+            for (long[] round : rounds) {
+                double x = round[0] - origin[0];
+                double y = round[1] - origin[1];
+                sumX += x;
+                sumY += y;
+                sumXX += x * x;
+                sumXY += x * y;
+            }
+            int n = rounds.size();
+            double denominator = n * sumXX - sumX * sumX;
+            if (denominator != 0) {
+                drift = (n * sumXY - sumX * sumY) / denominator;
+            }
+        }
+
+        referenceHostNanos = hostNanos;
+        referenceOffsetNanos = offsetNanos;
+        synced = true;
+    }
+
+    /**
+     * 是否已完成至少一轮同步
+     */
+    public boolean isSynchronized() {
+        return synced;
+    }
+
+    /**
+     * 将主机时间换算为设备时间
+     * @param hostNanos 主机时间 (System.nanoTime)
+     * @return 设备时间(微秒)，未同步时返回-1
+     */
+    public long toDeviceTimeUs(long hostNanos) {
+        if (!synced) {
+            return -1;
+        }
+        long elapsed = hostNanos - referenceHostNanos;
+        long offset = referenceOffsetNanos + (long) (drift * elapsed);
+        return (hostNanos + offset) / 1000;
+    }
+
+    /**
+     * 将设备时间换算为主机时间
+     * @param deviceTimeUs 设备时间(微秒)
+     * @return 主机时间 (System.nanoTime 基准)
+     */
+    public long toHostNanos(long deviceTimeUs) {
+        long deviceNanos = deviceTimeUs * 1000;
+        long approxHost = deviceNanos - referenceOffsetNanos;
+        long offset = referenceOffsetNanos + (long) (drift * (approxHost - referenceHostNanos));
+        return deviceNanos - offset;
+    }
+
+    /**
+     * 估计报告离开设备时的设备时间
+     * @param hostReceiveNanos 主机收到报告的时间
+     * @return 设备时间(微秒)，未同步时返回-1
+     */
+    public long estimateDeviceSendTimeUs(long hostReceiveNanos) {
+        if (!synced) {
+            return -1;
+        }
+        // 以最短往返时间的一半作为接收单程延迟
+        return toDeviceTimeUs(hostReceiveNanos - minRttNanos / 2);
+    }
+
+    /**
+     * 当前估计的时钟偏移 (设备 - 主机, 纳秒)
+     */
+    public long getOffsetNanos() {
+        return referenceOffsetNanos;
+    }
+
+    /**
+     * 设备时钟相对主机的漂移 (ppm)
+     */
+    public double getDriftPpm() {
+        return drift * 1_000_000;
+    }
+
+    /**
+     * 发送方向单程延迟 (主机 -> 设备)，基于两个方向对称的假设，见类说明
+     */
+    public LatencyRecorder getSendLatency() {
+        return sendLatency;
+    }
+
+    /**
+     * 接收方向单程延迟 (设备 -> 主机)，基于两个方向对称的假设，见类说明
+     */
+    public LatencyRecorder getReceiveLatency() {
+        return receiveLatency;
+    }
+
+    /**
+     * 生成同步摘要
+     */
+    public String summary() {
+        if (!synced) {
+            return "未同步";
+        }
+        return String.format("偏移 %.3f ms, 漂移 %.1f ppm, 最短往返 %.2f ms%n  发送单程 - %s%n  接收单程 - %s",
+            referenceOffsetNanos / 1_000_000.0, getDriftPpm(), minRttNanos / 1_000_000.0,
+            sendLatency.summary(), receiveLatency.summary());
+    }
+}
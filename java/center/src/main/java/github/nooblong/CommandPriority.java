@@ -0,0 +1,48 @@
+package github.nooblong;
+
+/**
+ * 命令优先级
+ * 调度器总是先处理高优先级队列，但任何队列的队首等待超过其最长等待时间后会被优先处理，避免饿死
+ */
+public enum CommandPriority {
+
+    /** 控制命令: 重置、鼠标、LED等用户可见的动作 */
+    CONTROL("控制", 0),
+    /** 交互命令: 菜单和API客户端发起的请求 */
+    INTERACTIVE("交互", 250),
+    /** 后台命令: 定期传感器轮询等 */
+    BACKGROUND("后台", 1000);
+
+    private final String displayName;
+    private final long maxWaitMs;
+
+    CommandPriority(String displayName, long maxWaitMs) {
+        this.displayName = displayName;
+        this.maxWaitMs = maxWaitMs;
+    }
+
+    public String getDisplayName() {
+        return displayName;
+    }
+
+    /**
+     * 队首命令最长等待时间(毫秒)，超过后不再让位于更高优先级，0表示不限制
+     */
+    public long getMaxWaitMs() {
+        return maxWaitMs;
+    }
+
+    /**
+     * 命令的默认优先级
+     */
+    public static CommandPriority defaultFor(byte command) {
+        switch (command) {
+            case HidController.Commands.RESET_DEVICE:
+            case HidController.Commands.MOUSE_CLICK:
+            case HidController.Commands.SET_LED_COLOR:
+                return CONTROL;
+            default:
+                return INTERACTIVE;
+        }
+    }
+}
@@ -0,0 +1,303 @@
+package github.nooblong;
+
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * 设备命令调度器
+ * 按优先级分队列，由单个IO线程依次执行，保证同一时间只有一个命令在设备上
+ *
+ * 调度规则:
+ *   1. 已取消或已过期的命令直接丢弃，不会发送到设备
+ *   2. 控制队列非空时总是先处理，心跳等控制命令不会被其他队列插队
+ *   3. 其余队列中，队首等待超过 {@link CommandPriority#getMaxWaitMs()} 的队列优先处理 (超时最久者优先)
+ *   4. 否则处理优先级最高的非空队列
+ *
+ * 返回的Future只在命令开始执行前可以取消: cancel 返回true时保证命令不会发送，
+ * 命令已经开始写入设备时 cancel 返回false
+ */
+public class CommandScheduler {
+
+    /**
+     * 命令结果，开始执行后不能再取消
+     */
+    private static class RequestFuture<T> extends CompletableFuture<T> {
+        private static final int PENDING = 0;
+        private static final int STARTED = 1;
+        private static final int CANCELLED = 2;
+
+        private final AtomicInteger state = new AtomicInteger(PENDING);
+
+        /**
+         * 标记为开始执行
+         * @return false表示已被取消，不应执行
+         */
+        boolean start() {
+            return state.compareAndSet(PENDING, STARTED);
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            if (!state.compareAndSet(PENDING, CANCELLED)) {
+                return isCancelled();
+            }
+            return super.cancel(mayInterruptIfRunning);
+        }
+    }
+
+    /**
+     * 排队中的命令
+     */
+    private static class Request<T> {
+        final CommandPriority priority;
+        final long enqueuedNanos;
+        final long deadlineNanos;
+        final Supplier<T> work;
+        final RequestFuture<T> future = new RequestFuture<>();
+
+        Request(CommandPriority priority, long enqueuedNanos, long deadlineNanos, Supplier<T> work) {
+            this.priority = priority;
+            this.enqueuedNanos = enqueuedNanos;
+            this.deadlineNanos = deadlineNanos;
+            this.work = work;
+        }
+
+        boolean isExpired(long now) {
+            return deadlineNanos != 0 && now - deadlineNanos > 0;
+        }
+
+        /**
+         * 执行命令
+         * @return false表示命令已被取消，没有执行
+         */
+        boolean run() {
+            if (!future.start()) {
+                return false;
+            }
+            try {
+                future.complete(work.get());
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * 单个优先级队列的统计
+     */
+    public static class LaneStats {
+        private final AtomicLong executed = new AtomicLong();
+        private final AtomicLong expired = new AtomicLong();
+        private final AtomicLong cancelled = new AtomicLong();
+        private final LatencyRecorder queueWait = new LatencyRecorder();
+
+        public long getExecuted() {
+            return executed.get();
+        }
+
+        public long getExpired() {
+            return expired.get();
+        }
+
+        public long getCancelled() {
+            return cancelled.get();
+        }
+
+        /**
+         * 排队等待时间
+         */
+        public LatencyRecorder getQueueWait() {
+            return queueWait;
+        }
+    }
+
+    private final Map<CommandPriority, ArrayDeque<Request<?>>> lanes = new EnumMap<>(CommandPriority.class);
+    private final Map<CommandPriority, LaneStats> stats = new EnumMap<>(CommandPriority.class);
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+    private final Thread worker;
+    private volatile boolean running = true;
+
+    public CommandScheduler() {
+        for (CommandPriority priority : CommandPriority.values()) {
+            lanes.put(priority, new ArrayDeque<>());
+            stats.put(priority, new LaneStats());
+        }
+        worker = new Thread(this::workLoop, "hid-io");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * 提交命令
+     * @param priority 优先级
+     * @param deadlineMs 相对截止时间(毫秒)，到期仍未执行则丢弃；0表示不限制
+     * @param work 在IO线程上执行的设备操作
+     * @return 命令结果，过期时以 {@link TimeoutException} 完成；调用 cancel 可在发送前撤销
+     */
+    public <T> CompletableFuture<T> submit(CommandPriority priority, long deadlineMs, Supplier<T> work) {
+        long now = System.nanoTime();
+        long deadline = deadlineMs > 0 ? now + TimeUnit.MILLISECONDS.toNanos(deadlineMs) : 0;
+        Request<T> request = new Request<>(priority, now, deadline, work);
+
+        // 在IO线程内提交的命令直接执行，避免自己等待自己
+        if (Thread.currentThread() == worker) {
+            request.run();
+            stats.get(priority).executed.incrementAndGet();
+            return request.future;
+        }
+
+        lock.lock();
+        try {
+            if (!running) {
+                request.future.completeExceptionally(new IllegalStateException("命令调度器已关闭"));
+                return request.future;
+            }
+            lanes.get(priority).addLast(request);
+            available.signal();
+        } finally {
+            lock.unlock();
+        }
+        return request.future;
+    }
+
+    /**
+     * 获取指定优先级的统计
+     */
+    public LaneStats getStats(CommandPriority priority) {
+        return stats.get(priority);
+    }
+
+    /**
+     * 指定优先级当前排队数
+     */
+    public int getQueueLength(CommandPriority priority) {
+        lock.lock();
+        try {
+            return lanes.get(priority).size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 生成各队列统计摘要
+     */
+    public String summary() {
+        StringBuilder sb = new StringBuilder();
+        for (CommandPriority priority : CommandPriority.values()) {
+            LaneStats lane = stats.get(priority);
+            sb.append(String.format("%s队列: 执行 %d, 过期 %d, 取消 %d, 排队 %d%n  等待时间 - %s%n",
+                priority.getDisplayName(), lane.getExecuted(), lane.getExpired(), lane.getCancelled(),
+                getQueueLength(priority), lane.getQueueWait().summary()));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 关闭调度器，排队中的命令以异常结束
+     */
+    public void shutdown() {
+        lock.lock();
+        try {
+            running = false;
+            for (ArrayDeque<Request<?>> lane : lanes.values()) {
+                for (Request<?> request : lane) {
+                    request.future.completeExceptionally(new IllegalStateException("命令调度器已关闭"));
+                }
+                lane.clear();
+            }
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void workLoop() {
+        while (true) {
+            Request<?> request;
+            lock.lock();
+            try {
+                while ((request = next(System.nanoTime())) == null) {
+                    if (!running) {
+                        return;
+                    }
+                    available.await();
+                }
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                lock.unlock();
+            }
+
+            LaneStats lane = stats.get(request.priority);
+            long startNanos = System.nanoTime();
+            // 出队后到执行前仍可能被取消，以 run 的结果为准
+            if (!request.run()) {
+                lane.cancelled.incrementAndGet();
+                continue;
+            }
+            lane.queueWait.record(startNanos - request.enqueuedNanos);
+            lane.executed.incrementAndGet();
+        }
+    }
+
+    /**
+     * 选出下一个要执行的命令，调用时需持有锁
+     */
+    private Request<?> next(long now) {
+        CommandPriority chosen = null;
+        long mostOverdue = 0;
+
+        for (CommandPriority priority : CommandPriority.values()) {
+            Request<?> head = purgeHead(priority, now);
+            if (head == null) {
+                continue;
+            }
+            if (chosen == null) {
+                chosen = priority;
+            }
+            if (chosen == CommandPriority.CONTROL) {
+                break;
+            }
+            long maxWait = TimeUnit.MILLISECONDS.toNanos(priority.getMaxWaitMs());
+            long overdue = now - head.enqueuedNanos - maxWait;
+            if (maxWait > 0 && overdue > mostOverdue) {
+                mostOverdue = overdue;
+                chosen = priority;
+            }
+        }
+        return chosen != null ? lanes.get(chosen).pollFirst() : null;
+    }
+
+    /**
+     * 丢弃队首已取消或已过期的命令，返回第一个有效命令
+     */
+    private Request<?> purgeHead(CommandPriority priority, long now) {
+        ArrayDeque<Request<?>> lane = lanes.get(priority);
+        LaneStats laneStats = stats.get(priority);
+        Request<?> head;
+        while ((head = lane.peekFirst()) != null) {
+            if (head.future.isCancelled()) {
+                laneStats.cancelled.incrementAndGet();
+            } else if (head.isExpired(now)) {
+                laneStats.expired.incrementAndGet();
+                head.future.completeExceptionally(new TimeoutException("命令已过期，未发送"));
+            } else {
+                return head;
+            }
+            lane.pollFirst();
+        }
+        return null;
+    }
+}
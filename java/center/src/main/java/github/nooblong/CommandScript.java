@@ -0,0 +1,131 @@
+package github.nooblong;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * 定时命令脚本
+ * 每行一个命令，格式为 "偏移毫秒 动作"，偏移相对于脚本开始时间
+ *
+ * 示例 (LED动画):
+ *   # 注释
+ *   repeat 3 1500
+ *   0     led 255 0 0
+ *   500   led 0 255 0
+ *   1000  led 0 0 255
+ *
+ * repeat 次数 周期毫秒: 将整条时间线按周期重复指定次数
+ */
+public class CommandScript {
+
+    /**
+     * 脚本中的一条定时命令
+     */
+    public static class Entry {
+        private final long offsetMs;
+        private final DeviceAction action;
+
+        public Entry(long offsetMs, DeviceAction action) {
+            this.offsetMs = offsetMs;
+            this.action = action;
+        }
+
+        public long getOffsetMs() {
+            return offsetMs;
+        }
+
+        public DeviceAction getAction() {
+            return action;
+        }
+    }
+
+    private final String name;
+    private final List<Entry> entries;
+
+    public CommandScript(String name, List<Entry> entries) {
+        List<Entry> sorted = new ArrayList<>(entries);
+        sorted.sort(Comparator.comparingLong(Entry::getOffsetMs));
+        this.name = name;
+        this.entries = Collections.unmodifiableList(sorted);
+    }
+
+    /**
+     * 从文件加载脚本
+     */
+    public static CommandScript load(Path path) throws IOException {
+        return parse(path.getFileName().toString(), Files.readAllLines(path, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 解析脚本文本
+     * @param name 脚本名称
+     * @param lines 脚本行
+     * @throws IllegalArgumentException 格式无效时抛出，消息中包含行号
+     */
+    public static CommandScript parse(String name, List<String> lines) {
+        List<Entry> timeline = new ArrayList<>();
+        int repeatCount = 1;
+        long repeatPeriodMs = 0;
+
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i).trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            try {
+                String[] parts = line.split("\\s+", 2);
+                if ("repeat".equalsIgnoreCase(parts[0])) {
+                    String[] args = parts.length > 1 ? parts[1].split("\\s+") : new String[0];
+                    if (args.length != 2) {
+                        throw new IllegalArgumentException("repeat 需要次数和周期毫秒");
+                    }
+                    repeatCount = Integer.parseInt(args[0]);
+                    repeatPeriodMs = Long.parseLong(args[1]);
+                    if (repeatCount < 1 || repeatPeriodMs < 0) {
+                        throw new IllegalArgumentException("repeat 参数无效");
+                    }
+                    continue;
+                }
+                if (parts.length < 2) {
+                    throw new IllegalArgumentException("缺少动作");
+                }
+                long offset = Long.parseLong(parts[0]);
+                if (offset < 0) {
+                    throw new IllegalArgumentException("偏移不能为负数");
+                }
+                timeline.add(new Entry(offset, DeviceAction.parse(parts[1])));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException(String.format("%s 第%d行: %s", name, i + 1, e.getMessage()), e);
+            }
+        }
+
+        List<Entry> entries = new ArrayList<>(timeline.size() * repeatCount);
+        for (int r = 0; r < repeatCount; r++) {
+            for (Entry entry : timeline) {
+                entries.add(new Entry(entry.offsetMs + r * repeatPeriodMs, entry.action));
+            }
+        }
+        return new CommandScript(name, entries);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    /**
+     * 脚本总时长(毫秒)
+     */
+    public long getDurationMs() {
+        return entries.isEmpty() ? 0 : entries.get(entries.size() - 1).offsetMs;
+    }
+}
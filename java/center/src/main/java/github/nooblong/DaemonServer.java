@@ -0,0 +1,393 @@
+package github.nooblong;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 无界面服务模式
+ * 持有一个HidController，通过本地HTTP/JSON接口供多个客户端共享同一设备
+ *
+ * 接口:
+ *   GET  /api/status                  设备状态
+ *   GET  /api/sensors                 读取所有传感器
+ *   GET  /api/sensors/{name}          读取指定传感器 (temperature, humidity)
+ *   GET  /api/history?limit=          最近同步的设备历史采样
+ *   POST /api/commands/clear-console  清空ESP32控制台
+ *   POST /api/commands/system-info    显示ESP32系统信息
+ *   POST /api/commands/mouse-click    执行鼠标点击
+ *   POST /api/commands/led?red=&green=&blue=  设置LED颜色
+ *   POST /api/commands/reset          重置设备
+ *   POST /api/commands/raw?command=&data=     自定义命令 (data用逗号分隔)
+ */
+public class DaemonServer {
+
+    private final HidController controller;
+    private final DeviceConfig config;
+    private HttpServer server;
+    private ExecutorService executor;
+
+    public DaemonServer(HidController controller, DeviceConfig config) {
+        this.controller = controller;
+        this.config = config;
+    }
+
+    /**
+     * 启动HTTP服务
+     */
+    public void start() throws IOException {
+        InetSocketAddress address = new InetSocketAddress(config.getDaemonBindAddress(), config.getDaemonPort());
+        server = HttpServer.create(address, 0);
+        server.createContext("/api/status", this::handleStatus);
+        server.createContext("/api/sensors", this::handleSensors);
+        server.createContext("/api/commands/", this::handleCommand);
+        server.createContext("/api/history", this::handleHistory);
+
+        executor = Executors.newFixedThreadPool(config.getDaemonThreads());
+        server.setExecutor(executor);
+        server.start();
+
+        System.out.printf("服务模式已启动: http://%s:%d/api%n",
+            address.getHostString(), server.getAddress().getPort());
+    }
+
+    /**
+     * 停止HTTP服务
+     */
+    public void stop() {
+        if (server != null) {
+            server.stop(1);
+            System.out.println("HTTP服务已停止");
+        }
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * 读取传感器，有效期内返回缓存读数，并发的相同读取合并为一次设备往返
+     */
+    public SensorReading readSensor(SensorType sensor) {
+        return controller.readSensorReading(sensor, CommandPriority.INTERACTIVE, 0);
+    }
+
+    private void handleStatus(HttpExchange exchange) throws IOException {
+        if (!requireMethod(exchange, "GET")) {
+            return;
+        }
+        String body = "{"
+            + "\"connected\":" + controller.isConnected() + ","
+            + "\"link\":" + linkStats() + ","
+            + "\"clock\":" + clockStats() + ","
+            + "\"device\":" + quote(controller.getDeviceInfo()) + ","
+            + "\"reports\":" + reportStats() + ","
+            + "\"sensorReads\":" + controller.getSensorCache().getLoads() + ","
+            + "\"cachedReads\":" + controller.getSensorCache().getHits() + ","
+            + "\"coalescedReads\":" + controller.getSensorCache().getCoalesced() + ","
+            + "\"lanes\":" + laneStats()
+            + "}";
+        sendJson(exchange, 200, body);
+    }
+
+    private String reportStats() {
+        return "{"
+            + "\"outputSize\":" + controller.getOutputReportSize() + ","
+            + "\"inputSize\":" + controller.getInputReportSize() + ","
+            + "\"controlReportId\":" + (controller.getControlReportId() & 0xFF) + ","
+            + "\"bulkReportId\":" + (controller.getBulkReportId() & 0xFF)
+            + "}";
+    }
+
+    private String linkStats() {
+        LinkMonitor monitor = controller.getLinkMonitor();
+        if (monitor == null) {
+            return "null";
+        }
+        double rtt = monitor.getSmoothedRttMs();
+        return "{\"state\":" + quote(monitor.getState().name().toLowerCase())
+            + ",\"quality\":" + monitor.getQuality()
+            + ",\"rttMs\":" + (Double.isNaN(rtt) ? "null" : String.valueOf(rtt))
+            + ",\"lossRate\":" + monitor.getLossRate()
+            + ",\"heartbeatsSent\":" + monitor.getHeartbeatsSent()
+            + ",\"heartbeatsLost\":" + monitor.getHeartbeatsLost()
+            + "}";
+    }
+
+    private String clockStats() {
+        ClockSync sync = controller.getClockSync();
+        if (sync == null || !sync.isSynchronized()) {
+            return "null";
+        }
+        return "{\"offsetMs\":" + sync.getOffsetNanos() / 1_000_000.0
+            + ",\"driftPpm\":" + sync.getDriftPpm()
+            + ",\"sendP50Ms\":" + LatencyRecorder.toMillis(sync.getSendLatency().getPercentileNanos(50))
+            + ",\"sendP99Ms\":" + LatencyRecorder.toMillis(sync.getSendLatency().getPercentileNanos(99))
+            + ",\"receiveP50Ms\":" + LatencyRecorder.toMillis(sync.getReceiveLatency().getPercentileNanos(50))
+            + ",\"receiveP99Ms\":" + LatencyRecorder.toMillis(sync.getReceiveLatency().getPercentileNanos(99))
+            + "}";
+    }
+
+    private String laneStats() {
+        CommandScheduler scheduler = controller.getCommandScheduler();
+        StringBuilder sb = new StringBuilder("{");
+        for (CommandPriority priority : CommandPriority.values()) {
+            CommandScheduler.LaneStats stats = scheduler.getStats(priority);
+            if (sb.length() > 1) sb.append(',');
+            sb.append(quote(priority.name().toLowerCase())).append(":{")
+                .append("\"executed\":").append(stats.getExecuted())
+                .append(",\"expired\":").append(stats.getExpired())
+                .append(",\"cancelled\":").append(stats.getCancelled())
+                .append(",\"queued\":").append(scheduler.getQueueLength(priority))
+                .append(",\"waitP99Ms\":").append(LatencyRecorder.toMillis(stats.getQueueWait().getPercentileNanos(99)))
+                .append('}');
+        }
+        return sb.append('}').toString();
+    }
+
+    private void handleSensors(HttpExchange exchange) throws IOException {
+        if (!requireMethod(exchange, "GET")) {
+            return;
+        }
+        // 上下文按前缀匹配，只接受 /api/sensors 和 /api/sensors/<名称>
+        String path = exchange.getRequestURI().getPath();
+        String name;
+        if (path.equals("/api/sensors")) {
+            name = "";
+        } else if (path.startsWith("/api/sensors/")) {
+            name = path.substring("/api/sensors/".length());
+        } else {
+            sendError(exchange, 404, "未知接口: " + path);
+            return;
+        }
+
+        if (name.isEmpty()) {
+            StringBuilder body = new StringBuilder("{");
+            SensorType[] sensors = SensorType.values();
+            for (int i = 0; i < sensors.length; i++) {
+                if (i > 0) body.append(',');
+                SensorReading reading = readSensor(sensors[i]);
+                body.append(quote(sensors[i].getKey())).append(':').append(reading != null ? number(reading.getValue()) : "null");
+            }
+            body.append('}');
+            sendJson(exchange, 200, body.toString());
+            return;
+        }
+
+        SensorType sensor = SensorType.fromKey(name);
+        if (sensor == null) {
+            sendError(exchange, 404, "未知传感器: " + name);
+            return;
+        }
+        LinkMonitor monitor = controller.getLinkMonitor();
+        if (monitor != null && monitor.getState() == LinkMonitor.State.DOWN) {
+            // 链路已断开时立即返回，不让客户端等待读取超时
+            sendError(exchange, 503, "设备链路已断开");
+            return;
+        }
+
+        SensorReading reading = readSensor(sensor);
+        if (reading == null) {
+            sendError(exchange, 504, "读取" + sensor.getDisplayName() + "失败");
+            return;
+        }
+        sendJson(exchange, 200, "{\"sensor\":" + quote(sensor.getKey())
+            + ",\"value\":" + number(reading.getValue())
+            + ",\"unit\":" + quote(sensor.getUnit())
+            + ",\"deviceTimeUs\":" + (reading.getDeviceTimeUs() >= 0 ? String.valueOf(reading.getDeviceTimeUs()) : "null")
+            + "}");
+    }
+
+    private void handleHistory(HttpExchange exchange) throws IOException {
+        if (!requireMethod(exchange, "GET")) {
+            return;
+        }
+        HistorySync sync = controller.getHistorySync();
+        if (sync == null) {
+            sendError(exchange, 404, "历史数据同步未启用");
+            return;
+        }
+
+        int limit;
+        try {
+            String value = parseQuery(exchange.getRequestURI().getRawQuery()).get("limit");
+            limit = value != null ? Integer.parseInt(value) : 100;
+        } catch (NumberFormatException e) {
+            sendError(exchange, 400, "无效的limit");
+            return;
+        }
+
+        StringBuilder body = new StringBuilder("{\"lastSequence\":").append(sync.getLastSequence()).append(",\"samples\":[");
+        List<HistorySample> samples = sync.getRecent(Math.max(0, limit));
+        for (int i = 0; i < samples.size(); i++) {
+            HistorySample sample = samples.get(i);
+            if (i > 0) body.append(',');
+            body.append("{\"sequence\":").append(sample.getSequence())
+                .append(",\"deviceTimeMs\":").append(sample.getDeviceTimeMs())
+                .append(",\"temperature\":").append(number(sample.getTemperature()))
+                .append(",\"humidity\":").append(number(sample.getHumidity()))
+                .append('}');
+        }
+        body.append("]}");
+        sendJson(exchange, 200, body.toString());
+    }
+
+    private void handleCommand(HttpExchange exchange) throws IOException {
+        if (!requireMethod(exchange, "POST")) {
+            return;
+        }
+        String name = exchange.getRequestURI().getPath().substring("/api/commands/".length());
+        Map<String, String> params = parseQuery(exchange.getRequestURI().getRawQuery());
+
+        boolean success;
+        try {
+            switch (name) {
+                case "clear-console":
+                    success = controller.clearConsole();
+                    break;
+                case "system-info":
+                    success = controller.showSystemInfo();
+                    break;
+                case "mouse-click":
+                    success = controller.performMouseClick();
+                    break;
+                case "led":
+                    success = controller.setLedColor(
+                        parseColor(params, "red"), parseColor(params, "green"), parseColor(params, "blue"));
+                    break;
+                case "reset":
+                    success = controller.resetDevice();
+                    break;
+                case "raw":
+                    success = sendRawCommand(params);
+                    break;
+                default:
+                    sendError(exchange, 404, "未知命令: " + name);
+                    return;
+            }
+        } catch (IllegalArgumentException e) {
+            sendError(exchange, 400, e.getMessage());
+            return;
+        }
+
+        if (success) {
+            sendJson(exchange, 200, "{\"command\":" + quote(name) + ",\"success\":true}");
+        } else {
+            sendError(exchange, 502, "命令发送失败: " + name);
+        }
+    }
+
+    private boolean sendRawCommand(Map<String, String> params) {
+        String commandValue = params.get("command");
+        if (commandValue == null) {
+            throw new IllegalArgumentException("缺少参数: command");
+        }
+        int command = parseByte(commandValue);
+
+        String dataValue = params.get("data");
+        if (dataValue == null || dataValue.isEmpty()) {
+            return controller.sendCommand((byte) command);
+        }
+        String[] parts = dataValue.split(",");
+        byte[] data = new byte[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            data[i] = (byte) parseByte(parts[i].trim());
+        }
+        return controller.sendCommand((byte) command, data);
+    }
+
+    private int parseColor(Map<String, String> params, String key) {
+        String value = params.get(key);
+        if (value == null) {
+            throw new IllegalArgumentException("缺少参数: " + key);
+        }
+        return parseByte(value);
+    }
+
+    private int parseByte(String value) {
+        try {
+            int result = value.startsWith("0x") || value.startsWith("0X")
+                ? Integer.parseInt(value.substring(2), 16)
+                : Integer.parseInt(value);
+            if (result < 0 || result > 255) {
+                throw new IllegalArgumentException("值必须在0-255范围内: " + value);
+            }
+            return result;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("无效的数字格式: " + value);
+        }
+    }
+
+    private boolean requireMethod(HttpExchange exchange, String method) throws IOException {
+        if (!method.equalsIgnoreCase(exchange.getRequestMethod())) {
+            exchange.getResponseHeaders().set("Allow", method);
+            sendError(exchange, 405, "仅支持" + method + "请求");
+            return false;
+        }
+        return true;
+    }
+
+    private Map<String, String> parseQuery(String query) {
+        Map<String, String> params = new HashMap<>();
+        if (query == null || query.isEmpty()) {
+            return params;
+        }
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            String key = eq >= 0 ? pair.substring(0, eq) : pair;
+            String value = eq >= 0 ? pair.substring(eq + 1) : "";
+            params.put(URLDecoder.decode(key, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return params;
+    }
+
+    private void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        sendJson(exchange, status, "{\"error\":" + quote(message) + "}");
+    }
+
+    private void sendJson(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream output = exchange.getResponseBody()) {
+            output.write(bytes);
+        }
+    }
+
+    private static String number(Float value) {
+        return value != null && !value.isNaN() && !value.isInfinite() ? value.toString() : "null";
+    }
+
+    private static String quote(String value) {
+        if (value == null) {
+            return "null";
+        }
+        StringBuilder sb = new StringBuilder("\"");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"': sb.append("\\\""); break;
+                case '\\': sb.append("\\\\"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                case '\t': sb.append("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        return sb.append('"').toString();
+    }
+}
@@ -0,0 +1,38 @@
+package github.nooblong;
+
+/**
+ * 死区过滤
+ * 只有与上次输出值的差超过阈值时才输出，传感器容差范围内的波动被丢弃
+ */
+public class DeadbandStage implements SensorStage {
+
+    private final double threshold;
+    private double lastEmitted = Double.NaN;
+
+    /**
+     * @param threshold 变化阈值，0表示仅在值变化时输出
+     */
+    public DeadbandStage(double threshold) {
+        if (threshold < 0) {
+            throw new IllegalArgumentException("死区阈值不能为负数: " + threshold);
+        }
+        this.threshold = threshold;
+    }
+
+    @Override
+    public double process(double value) {
+        if (!Double.isNaN(lastEmitted)) {
+            double delta = Math.abs(value - lastEmitted);
+            if (threshold == 0 ? delta == 0 : delta < threshold) {
+                return Double.NaN;
+            }
+        }
+        lastEmitted = value;
+        return value;
+    }
+
+    @Override
+    public void reset() {
+        lastEmitted = Double.NaN;
+    }
+}
@@ -0,0 +1,170 @@
+package github.nooblong;
+
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 设备动作
+ * 由文本描述解析得到的一条可执行命令，供命令脚本等场景复用
+ *
+ * 支持的格式:
+ *   clear                清空ESP32控制台
+ *   info                 显示ESP32系统信息
+ *   click                执行鼠标点击
+ *   led R G B            设置LED颜色
+ *   temperature          读取温度
+ *   humidity             读取湿度
+ *   reset                重置设备
+ *   raw CMD [DATA...]    自定义命令 (支持0x前缀)
+ */
+public class DeviceAction {
+
+    // 异步执行读取类动作时等待响应的超时时间
+    private static final int RESPONSE_TIMEOUT_MS = 2000;
+
+    private final String name;
+    private final byte command;
+    private final byte[] data;
+
+    private DeviceAction(String name, byte command, byte... data) {
+        this.name = name;
+        this.command = command;
+        this.data = data;
+    }
+
+    /**
+     * 解析动作描述
+     * @param text 动作文本，如 "led 255 0 0"
+     * @return 解析后的动作
+     * @throws IllegalArgumentException 格式无效时抛出
+     */
+    public static DeviceAction parse(String text) {
+        String[] parts = text.trim().split("\\s+");
+        String name = parts[0].toLowerCase();
+
+        switch (name) {
+            case "clear":
+                expectArgs(parts, 0);
+                return new DeviceAction(name, HidController.Commands.CLEAR_CONSOLE);
+            case "info":
+                expectArgs(parts, 0);
+                return new DeviceAction(name, HidController.Commands.SHOW_SYSTEM_INFO);
+            case "click":
+                expectArgs(parts, 0);
+                return new DeviceAction(name, HidController.Commands.MOUSE_CLICK);
+            case "led":
+                expectArgs(parts, 3);
+                return new DeviceAction(name, HidController.Commands.SET_LED_COLOR,
+                    parseByte(parts[1]), parseByte(parts[2]), parseByte(parts[3]));
+            case "temperature":
+                expectArgs(parts, 0);
+                return new DeviceAction(name, HidController.Commands.GET_TEMPERATURE);
+            case "humidity":
+                expectArgs(parts, 0);
+                return new DeviceAction(name, HidController.Commands.GET_HUMIDITY);
+            case "reset":
+                expectArgs(parts, 0);
+                return new DeviceAction(name, HidController.Commands.RESET_DEVICE);
+            case "raw":
+                if (parts.length < 2) {
+                    throw new IllegalArgumentException("raw 需要命令值: " + text);
+                }
+                byte[] data = new byte[parts.length - 2];
+                for (int i = 0; i < data.length; i++) {
+                    data[i] = parseByte(parts[i + 2]);
+                }
+                return new DeviceAction(name, parseByte(parts[1]), data);
+            default:
+                throw new IllegalArgumentException("未知动作: " + parts[0]);
+        }
+    }
+
+    /**
+     * 在控制器上执行该动作
+     * 读取类动作在收到响应时才算成功
+     * @return 执行是否成功
+     */
+    public boolean execute(HidController controller) {
+        if (command == HidController.Commands.GET_TEMPERATURE) {
+            return controller.getTemperature() != null;
+        }
+        if (command == HidController.Commands.GET_HUMIDITY) {
+            return controller.getHumidity() != null;
+        }
+        return controller.sendCommand(command, data);
+    }
+
+    /**
+     * 提交到控制器的命令调度器，不等待执行完成
+     * @param controller 控制器
+     * @param priority 优先级
+     * @param deadlineMs 截止时间(毫秒)，0表示不限制
+     * @return 执行是否成功，读取类动作在收到响应时才算成功
+     */
+    public CompletableFuture<Boolean> submit(HidController controller, CommandPriority priority, long deadlineMs) {
+        return submit(controller, priority, deadlineMs, null);
+    }
+
+    /**
+     * 提交到控制器的命令调度器，命令开始写入设备时回调
+     * @param onStart 在IO线程上、写入设备之前调用，命令过期或取消时不调用；可为null
+     * @return 执行是否成功，读取类动作在收到响应时才算成功
+     */
+    public CompletableFuture<Boolean> submit(HidController controller, CommandPriority priority, long deadlineMs, Runnable onStart) {
+        if (command == HidController.Commands.GET_TEMPERATURE || command == HidController.Commands.GET_HUMIDITY) {
+            return controller.submitCommandWithReport(priority, deadlineMs, onStart, command, RESPONSE_TIMEOUT_MS)
+                .thenApply(Objects::nonNull);
+        }
+        return controller.submitCommand(priority, deadlineMs, onStart, command, data);
+    }
+
+    /**
+     * 是否为设置状态的动作 (如LED颜色)
+     * 同一命令的设置状态动作后发送的会覆盖先发送的，尚未发送的旧动作可以直接丢弃
+     */
+    public boolean isStateSetting() {
+        return command == HidController.Commands.SET_LED_COLOR;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public byte getCommand() {
+        return command;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(name);
+        if (command == HidController.Commands.SET_LED_COLOR || "raw".equals(name)) {
+            if ("raw".equals(name)) {
+                sb.append(String.format(" 0x%02X", command & 0xFF));
+            }
+            for (byte b : data) {
+                sb.append(' ').append(b & 0xFF);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static void expectArgs(String[] parts, int count) {
+        if (parts.length - 1 != count) {
+            throw new IllegalArgumentException(String.format("%s 需要 %d 个参数", parts[0], count));
+        }
+    }
+
+    private static byte parseByte(String value) {
+        try {
+            int result = value.startsWith("0x") || value.startsWith("0X")
+                ? Integer.parseInt(value.substring(2), 16)
+                : Integer.parseInt(value);
+            if (result < 0 || result > 255) {
+                throw new IllegalArgumentException("值必须在0-255范围内: " + value);
+            }
+            return (byte) result;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("无效的数字格式: " + value);
+        }
+    }
+}
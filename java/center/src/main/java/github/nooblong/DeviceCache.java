@@ -0,0 +1,147 @@
+package github.nooblong;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Properties;
+
+/**
+ * 设备身份缓存
+ * 在磁盘上记录上次成功连接的设备路径和序列号，下次启动时直接打开，跳过完整枚举
+ */
+public class DeviceCache {
+
+    private final Path file;
+
+    public DeviceCache(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * 默认缓存文件位置
+     */
+    public static Path defaultFile() {
+        return Paths.get(System.getProperty("user.home"), ".esp32-hid", "device-cache.properties");
+    }
+
+    /**
+     * 读取指定设备的缓存路径
+     * @return 缓存的路径，不存在或VID/PID不匹配时返回null
+     */
+    public String loadPath(int vendorId, int productId) {
+        Properties cached = load();
+        if (cached == null || !matches(cached, vendorId, productId)) {
+            return null;
+        }
+        String path = cached.getProperty("path");
+        return path != null && !path.isEmpty() ? path : null;
+    }
+
+    /**
+     * 读取指定设备的缓存序列号
+     * @return 缓存的序列号，未记录时返回null
+     */
+    public String loadSerialNumber(int vendorId, int productId) {
+        Properties cached = load();
+        if (cached == null || !matches(cached, vendorId, productId)) {
+            return null;
+        }
+        String serial = cached.getProperty("serial");
+        return serial != null && !serial.isEmpty() ? serial : null;
+    }
+
+    /**
+     * 记录成功连接的设备
+     */
+    public void save(int vendorId, int productId, String path, String serialNumber) {
+        Properties cached = load();
+        String serial = serialNumber == null ? "" : serialNumber;
+        if (cached != null && matches(cached, vendorId, productId)
+                && path.equals(cached.getProperty("path"))
+                && serial.equals(cached.getProperty("serial", ""))) {
+            return;
+        }
+
+        // 换了设备时不保留上一块板子的其他记录
+        Properties properties = new Properties();
+        properties.setProperty("vendor.id", String.format("0x%04X", vendorId));
+        properties.setProperty("product.id", String.format("0x%04X", productId));
+        properties.setProperty("path", path);
+        properties.setProperty("serial", serial);
+        store(properties);
+    }
+
+    /**
+     * 读取已下载的最后一条历史采样序号
+     * @return 序号，未记录时返回-1
+     */
+    public long loadHistorySequence(int vendorId, int productId) {
+        Properties cached = load();
+        if (cached == null || !matches(cached, vendorId, productId)) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(cached.getProperty("history.sequence", "-1"));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * 记录已下载的最后一条历史采样序号
+     */
+    public void saveHistorySequence(int vendorId, int productId, long sequence) {
+        Properties cached = load();
+        if (cached == null || !matches(cached, vendorId, productId)) {
+            return;
+        }
+        cached.setProperty("history.sequence", Long.toString(sequence));
+        store(cached);
+    }
+
+    private void store(Properties properties) {
+        try {
+            if (file.getParent() != null) {
+                Files.createDirectories(file.getParent());
+            }
+            try (OutputStream output = Files.newOutputStream(file)) {
+                properties.store(output, "ESP32 HID device cache");
+            }
+        } catch (IOException e) {
+            System.err.println("保存设备缓存失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 删除缓存
+     */
+    public void invalidate() {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            System.err.println("删除设备缓存失败: " + e.getMessage());
+        }
+    }
+
+    private Properties load() {
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        Properties properties = new Properties();
+        try (InputStream input = Files.newInputStream(file)) {
+            properties.load(input);
+            return properties;
+        } catch (IOException e) {
+            System.err.println("读取设备缓存失败: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private boolean matches(Properties cached, int vendorId, int productId) {
+        return String.format("0x%04X", vendorId).equals(cached.getProperty("vendor.id"))
+            && String.format("0x%04X", productId).equals(cached.getProperty("product.id"));
+    }
+}
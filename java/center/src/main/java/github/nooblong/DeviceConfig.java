@@ -2,6 +2,8 @@ package github.nooblong;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.Properties;
 
 /**
@@ -19,7 +21,32 @@ public class DeviceConfig {
     private static final int DEFAULT_TIMEOUT = 2000;
     private static final int DEFAULT_RETRY_COUNT = 3;
     private static final int DEFAULT_REPORT_SIZE = 64;
+    private static final int DEFAULT_CONTROL_REPORT_ID = 0;
+    private static final int DEFAULT_BULK_REPORT_ID = 0;
     private static final int DEFAULT_SENSOR_INTERVAL = 10;
+    private static final int DEFAULT_SENSOR_MAX_AGE = 1000;
+    private static final int DEFAULT_SENSOR_POLL_MIN = 1000;
+    private static final int DEFAULT_SENSOR_POLL_MAX = 60000;
+    private static final double DEFAULT_SENSOR_POLL_CHANGE = 0.5;
+    private static final int DEFAULT_HEARTBEAT_MIN_INTERVAL = 1000;
+    private static final int DEFAULT_HEARTBEAT_MAX_INTERVAL = 10000;
+    private static final int DEFAULT_HEARTBEAT_TIMEOUT = 500;
+    private static final int DEFAULT_HEARTBEAT_DEGRADED_QUALITY = 60;
+    private static final int DEFAULT_HISTORY_BUFFER_SIZE = 1024;
+    private static final int DEFAULT_CLOCK_SYNC_SAMPLES = 8;
+    private static final int DEFAULT_CLOCK_SYNC_INTERVAL = 60;
+    private static final int DEFAULT_LOAD_TEST_RATE = 100;
+    private static final int DEFAULT_LOAD_TEST_DURATION = 30;
+    private static final int DEFAULT_LOAD_TEST_CONCURRENCY = 1;
+    private static final int DEFAULT_LOAD_TEST_TIMEOUT = 1000;
+    private static final String DEFAULT_LOAD_TEST_MIX = "led:4,temperature:3,humidity:2,click:1";
+    private static final int DEFAULT_SIMULATED_POLL_INTERVAL = 1000;
+    private static final int DEFAULT_SIMULATED_PROCESSING = 200;
+    private static final int DEFAULT_SIMULATED_STALL_EVERY = 0;
+    private static final int DEFAULT_SIMULATED_STALL_MS = 50;
+    private static final String DEFAULT_DAEMON_BIND_ADDRESS = "127.0.0.1";
+    private static final int DEFAULT_DAEMON_PORT = 8765;
+    private static final int DEFAULT_DAEMON_THREADS = 8;
     
     public DeviceConfig() {
         loadConfig();
@@ -60,6 +87,21 @@ public class DeviceConfig {
         return parseHexValue(value, DEFAULT_PRODUCT_ID);
     }
     
+    /**
+     * 是否启用设备身份缓存
+     */
+    public boolean isDeviceCacheEnabled() {
+        return getBooleanProperty("device.cache.enabled", true);
+    }
+    
+    /**
+     * 获取设备身份缓存文件路径
+     */
+    public Path getDeviceCacheFile() {
+        String value = properties.getProperty("device.cache.file", "").trim();
+        return value.isEmpty() ? DeviceCache.defaultFile() : Paths.get(value);
+    }
+    
     /**
      * 获取通信超时时间
      */
@@ -81,6 +123,27 @@ public class DeviceConfig {
         return getIntProperty("communication.report.size", DEFAULT_REPORT_SIZE);
     }
     
+    /**
+     * 是否在连接后向设备查询报告格式
+     */
+    public boolean isReportNegotiationEnabled() {
+        return getBooleanProperty("communication.report.negotiate", false);
+    }
+    
+    /**
+     * 获取控制命令使用的报告ID (0表示不使用编号报告)
+     */
+    public int getControlReportId() {
+        return getIntProperty("communication.report.id.control", DEFAULT_CONTROL_REPORT_ID);
+    }
+    
+    /**
+     * 获取批量数据使用的报告ID (0表示不使用编号报告)
+     */
+    public int getBulkReportId() {
+        return getIntProperty("communication.report.id.bulk", DEFAULT_BULK_REPORT_ID);
+    }
+    
     /**
      * 获取传感器读取间隔
      */
@@ -102,6 +165,30 @@ public class DeviceConfig {
         return getBooleanProperty("sensor.humidity.enabled", true);
     }
     
+    /**
+     * 指定传感器是否启用
+     */
+    public boolean isSensorEnabled(SensorType sensor) {
+        return sensor == SensorType.TEMPERATURE ? isTemperatureEnabled() : isHumidityEnabled();
+    }
+    
+    /**
+     * 获取传感器数据处理管道描述
+     * @param sensor 传感器类型
+     * @return 管道描述，未配置时返回空字符串
+     */
+    public String getSensorPipeline(SensorType sensor) {
+        return properties.getProperty("sensor." + sensor.getKey() + ".pipeline", "").trim();
+    }
+    
+    /**
+     * 获取传感器读数的缓存有效期(毫秒)，0表示不缓存
+     * @param sensor 传感器类型
+     */
+    public int getSensorMaxAgeMs(SensorType sensor) {
+        return Math.max(0, getIntProperty("sensor." + sensor.getKey() + ".max.age.ms", DEFAULT_SENSOR_MAX_AGE));
+    }
+    
     /**
      * 获取默认LED红色值
      */
@@ -123,6 +210,205 @@ public class DeviceConfig {
         return getIntProperty("led.default.blue", 0);
     }
     
+    /**
+     * 是否启用心跳检测
+     */
+    public boolean isHeartbeatEnabled() {
+        return getBooleanProperty("heartbeat.enabled", false);
+    }
+    
+    /**
+     * 获取心跳最小间隔(毫秒)
+     */
+    public int getHeartbeatMinIntervalMs() {
+        return getIntProperty("heartbeat.min.interval.ms", DEFAULT_HEARTBEAT_MIN_INTERVAL);
+    }
+    
+    /**
+     * 获取心跳最大间隔(毫秒)，链路空闲且稳定时逐步放宽到该值
+     */
+    public int getHeartbeatMaxIntervalMs() {
+        return getIntProperty("heartbeat.max.interval.ms", DEFAULT_HEARTBEAT_MAX_INTERVAL);
+    }
+    
+    /**
+     * 获取心跳超时时间(毫秒)
+     */
+    public int getHeartbeatTimeoutMs() {
+        return getIntProperty("heartbeat.timeout.ms", DEFAULT_HEARTBEAT_TIMEOUT);
+    }
+    
+    /**
+     * 获取判定链路降级的质量评分阈值 (0-100)
+     */
+    public int getHeartbeatDegradedQuality() {
+        return getIntProperty("heartbeat.degraded.quality", DEFAULT_HEARTBEAT_DEGRADED_QUALITY);
+    }
+    
+    /**
+     * 是否在连接后下载设备缓存的历史数据
+     */
+    public boolean isHistoryEnabled() {
+        return getBooleanProperty("history.enabled", false);
+    }
+    
+    /**
+     * 获取主机端保留的最近历史采样数
+     */
+    public int getHistoryBufferSize() {
+        return getIntProperty("history.buffer.size", DEFAULT_HISTORY_BUFFER_SIZE);
+    }
+    
+    /**
+     * 是否启用主机与设备时钟同步
+     */
+    public boolean isClockSyncEnabled() {
+        return getBooleanProperty("clock.sync.enabled", false);
+    }
+    
+    /**
+     * 获取每轮时钟同步的交换次数
+     */
+    public int getClockSyncSamples() {
+        return getIntProperty("clock.sync.samples", DEFAULT_CLOCK_SYNC_SAMPLES);
+    }
+    
+    /**
+     * 获取时钟同步间隔(秒)
+     */
+    public int getClockSyncIntervalSeconds() {
+        return getIntProperty("clock.sync.interval.seconds", DEFAULT_CLOCK_SYNC_INTERVAL);
+    }
+    
+    /**
+     * 获取传感器自适应轮询的最小间隔(毫秒)
+     * @param sensor 传感器类型
+     */
+    public int getSensorPollMinMs(SensorType sensor) {
+        return getIntProperty("sensor." + sensor.getKey() + ".poll.min.ms", DEFAULT_SENSOR_POLL_MIN);
+    }
+    
+    /**
+     * 获取传感器自适应轮询的最大间隔(毫秒)
+     * @param sensor 传感器类型
+     */
+    public int getSensorPollMaxMs(SensorType sensor) {
+        return getIntProperty("sensor." + sensor.getKey() + ".poll.max.ms", DEFAULT_SENSOR_POLL_MAX);
+    }
+    
+    /**
+     * 获取加快轮询的变化阈值，相邻读数变化超过该值时缩短间隔
+     * @param sensor 传感器类型
+     */
+    public double getSensorPollChange(SensorType sensor) {
+        return getDoubleProperty("sensor." + sensor.getKey() + ".poll.change", DEFAULT_SENSOR_POLL_CHANGE);
+    }
+    
+    /**
+     * 获取规则文件路径，未配置时返回空字符串
+     */
+    public String getRulesFile() {
+        return properties.getProperty("rules.file", "").trim();
+    }
+    
+    /**
+     * 获取压力测试目标速率(次/秒)，0表示不限速
+     */
+    public int getLoadTestRate() {
+        return Math.max(0, getIntProperty("loadtest.rate", DEFAULT_LOAD_TEST_RATE));
+    }
+    
+    /**
+     * 获取压力测试时长(秒)
+     */
+    public int getLoadTestDurationSeconds() {
+        return getIntProperty("loadtest.duration.seconds", DEFAULT_LOAD_TEST_DURATION);
+    }
+    
+    /**
+     * 获取压力测试并发数 (闭环模式下的工作线程数)
+     */
+    public int getLoadTestConcurrency() {
+        return Math.max(1, getIntProperty("loadtest.concurrency", DEFAULT_LOAD_TEST_CONCURRENCY));
+    }
+    
+    /**
+     * 是否以开环方式发送 (按计划时间发送，不等待上一个请求完成)
+     */
+    public boolean isLoadTestOpenLoop() {
+        return getBooleanProperty("loadtest.open.loop", false);
+    }
+    
+    /**
+     * 获取压力测试单个请求的超时时间
+     */
+    public int getLoadTestTimeoutMs() {
+        return getIntProperty("loadtest.timeout.ms", DEFAULT_LOAD_TEST_TIMEOUT);
+    }
+    
+    /**
+     * 获取压力测试的命令混合比例，格式 "led:4,temperature:3,humidity:2,click:1"
+     */
+    public String getLoadTestMix() {
+        return properties.getProperty("loadtest.mix", DEFAULT_LOAD_TEST_MIX).trim();
+    }
+    
+    /**
+     * 压力测试是否使用模拟设备
+     */
+    public boolean isLoadTestSimulated() {
+        return getBooleanProperty("loadtest.simulated", false);
+    }
+    
+    /**
+     * 获取模拟设备的轮询间隔(微秒)
+     */
+    public int getSimulatedPollIntervalMicros() {
+        return getIntProperty("loadtest.simulated.poll.interval.us", DEFAULT_SIMULATED_POLL_INTERVAL);
+    }
+    
+    /**
+     * 获取模拟设备处理每条命令的耗时(微秒)
+     */
+    public int getSimulatedProcessingMicros() {
+        return getIntProperty("loadtest.simulated.processing.us", DEFAULT_SIMULATED_PROCESSING);
+    }
+    
+    /**
+     * 获取模拟设备的卡顿频率 (每隔多少条命令卡顿一次，0表示不卡顿)
+     */
+    public int getSimulatedStallEvery() {
+        return getIntProperty("loadtest.simulated.stall.every", DEFAULT_SIMULATED_STALL_EVERY);
+    }
+    
+    /**
+     * 获取模拟设备每次卡顿的时长(毫秒)
+     */
+    public int getSimulatedStallMs() {
+        return getIntProperty("loadtest.simulated.stall.ms", DEFAULT_SIMULATED_STALL_MS);
+    }
+    
+    /**
+     * 获取服务模式监听地址
+     */
+    public String getDaemonBindAddress() {
+        return properties.getProperty("daemon.bind.address", DEFAULT_DAEMON_BIND_ADDRESS).trim();
+    }
+    
+    /**
+     * 获取服务模式监听端口
+     */
+    public int getDaemonPort() {
+        return getIntProperty("daemon.port", DEFAULT_DAEMON_PORT);
+    }
+    
+    /**
+     * 获取服务模式处理线程数
+     */
+    public int getDaemonThreads() {
+        return Math.max(1, getIntProperty("daemon.threads", DEFAULT_DAEMON_THREADS));
+    }
+    
     /**
      * 是否启用调试
      */
@@ -173,6 +459,19 @@ public class DeviceConfig {
         }
     }
     
+    /**
+     * 获取浮点数属性
+     */
+    private double getDoubleProperty(String key, double defaultValue) {
+        try {
+            String value = properties.getProperty(key);
+            return value != null ? Double.parseDouble(value.trim()) : defaultValue;
+        } catch (NumberFormatException e) {
+            System.err.println("无效的数值 " + key + ": " + properties.getProperty(key) + ", 使用默认值: " + defaultValue);
+            return defaultValue;
+        }
+    }
+    
     /**
      * 获取布尔属性
      */
@@ -192,13 +491,34 @@ public class DeviceConfig {
         System.out.println("==============");
         System.out.printf("供应商ID: 0x%04X%n", getVendorId());
         System.out.printf("产品ID: 0x%04X%n", getProductId());
+        System.out.printf("设备缓存: %s%n", isDeviceCacheEnabled() ? getDeviceCacheFile() : "禁用");
         System.out.printf("通信超时: %d ms%n", getTimeout());
         System.out.printf("重试次数: %d%n", getRetryCount());
         System.out.printf("报告大小: %d bytes%n", getReportSize());
-        System.out.printf("传感器间隔: %d seconds%n", getSensorInterval());
+        System.out.printf("报告格式协商: %s%n", isReportNegotiationEnabled() ? "启用" : "禁用");
+        System.out.printf("报告ID: 控制 0x%02X, 批量 0x%02X%n", getControlReportId(), getBulkReportId());
+        System.out.printf("传感器初始间隔: %d seconds%n", getSensorInterval());
         System.out.printf("温度传感器: %s%n", isTemperatureEnabled() ? "启用" : "禁用");
         System.out.printf("湿度传感器: %s%n", isHumidityEnabled() ? "启用" : "禁用");
+        for (SensorType sensor : SensorType.values()) {
+            String pipeline = getSensorPipeline(sensor);
+            System.out.printf("%s处理管道: %s%n", sensor.getDisplayName(), pipeline.isEmpty() ? "无" : pipeline);
+            System.out.printf("%s读取缓存: %d ms%n", sensor.getDisplayName(), getSensorMaxAgeMs(sensor));
+            System.out.printf("%s轮询间隔: %d-%d ms, 变化阈值 %s%s%n", sensor.getDisplayName(), getSensorPollMinMs(sensor),
+                getSensorPollMaxMs(sensor), getSensorPollChange(sensor), sensor.getUnit());
+        }
+        System.out.printf("规则文件: %s%n", getRulesFile().isEmpty() ? "无" : getRulesFile());
         System.out.printf("默认LED颜色: RGB(%d, %d, %d)%n", getDefaultLedRed(), getDefaultLedGreen(), getDefaultLedBlue());
+        System.out.printf("心跳检测: %s%n", isHeartbeatEnabled()
+            ? String.format("%d-%d ms, 超时 %d ms", getHeartbeatMinIntervalMs(), getHeartbeatMaxIntervalMs(), getHeartbeatTimeoutMs())
+            : "禁用");
+        System.out.printf("历史数据同步: %s%n", isHistoryEnabled() ? "启用 (保留 " + getHistoryBufferSize() + " 条)" : "禁用");
+        System.out.printf("时钟同步: %s%n", isClockSyncEnabled()
+            ? String.format("每 %d 秒, 每轮 %d 次", getClockSyncIntervalSeconds(), getClockSyncSamples())
+            : "禁用");
+        System.out.printf("服务地址: %s:%d (%d 线程)%n", getDaemonBindAddress(), getDaemonPort(), getDaemonThreads());
+        System.out.printf("压力测试: %d 次/秒, %d 秒, 并发 %d, 混合 %s%s%n", getLoadTestRate(),
+            getLoadTestDurationSeconds(), getLoadTestConcurrency(), getLoadTestMix(), isLoadTestSimulated() ? " (模拟设备)" : "");
         System.out.printf("调试模式: %s%n", isDebugEnabled() ? "启用" : "禁用");
         System.out.printf("显示原始数据: %s%n", showRawData() ? "是" : "否");
         System.out.printf("记录命令: %s%n", logCommands() ? "是" : "否");
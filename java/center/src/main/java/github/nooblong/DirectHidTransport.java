@@ -0,0 +1,81 @@
+package github.nooblong;
+
+import org.hid4java.jna.HidApi;
+import org.hid4java.jna.HidDeviceStructure;
+
+/**
+ * 按设备路径直接打开的传输通道
+ * 不需要启动HidServices和枚举总线，用于使用缓存路径快速连接
+ */
+public class DirectHidTransport implements HidTransport {
+
+    private final String path;
+    private volatile HidDeviceStructure structure;
+    private final String serialNumber;
+    private final String product;
+    private final String manufacturer;
+
+    private DirectHidTransport(String path, HidDeviceStructure structure) {
+        this.path = path;
+        this.structure = structure;
+        this.serialNumber = HidApi.getSerialNumber(structure);
+        this.product = HidApi.getProductId(structure);
+        this.manufacturer = HidApi.getManufacturer(structure);
+    }
+
+    /**
+     * 按路径打开设备
+     * @param path 设备路径
+     * @return 传输通道，打开失败返回null
+     */
+    public static DirectHidTransport open(String path) {
+        HidDeviceStructure structure = HidApi.open(path);
+        return structure != null ? new DirectHidTransport(path, structure) : null;
+    }
+
+    @Override
+    public int write(byte[] data, int length, byte reportId) {
+        HidDeviceStructure current = structure;
+        return current != null ? HidApi.write(current, data, length, reportId) : -1;
+    }
+
+    @Override
+    public int read(byte[] buffer, int timeoutMs) {
+        HidDeviceStructure current = structure;
+        return current != null ? HidApi.read(current, buffer, timeoutMs) : -1;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return structure != null;
+    }
+
+    @Override
+    public void close() {
+        HidDeviceStructure current = structure;
+        structure = null;
+        if (current != null) {
+            HidApi.close(current);
+        }
+    }
+
+    @Override
+    public String getPath() {
+        return path;
+    }
+
+    @Override
+    public String getSerialNumber() {
+        return serialNumber;
+    }
+
+    @Override
+    public String getProduct() {
+        return product;
+    }
+
+    @Override
+    public String getManufacturer() {
+        return manufacturer;
+    }
+}
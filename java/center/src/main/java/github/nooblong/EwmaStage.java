@@ -0,0 +1,32 @@
+package github.nooblong;
+
+/**
+ * 指数加权移动平均
+ * 输出 = alpha * 当前值 + (1 - alpha) * 上次输出
+ */
+public class EwmaStage implements SensorStage {
+
+    private final double alpha;
+    private double average = Double.NaN;
+
+    /**
+     * @param alpha 平滑系数 (0, 1]，越小越平滑
+     */
+    public EwmaStage(double alpha) {
+        if (!(alpha > 0 && alpha <= 1)) {
+            throw new IllegalArgumentException("平滑系数必须在(0, 1]范围内: " + alpha);
+        }
+        this.alpha = alpha;
+    }
+
+    @Override
+    public double process(double value) {
+        average = Double.isNaN(average) ? value : alpha * value + (1 - alpha) * average;
+        return average;
+    }
+
+    @Override
+    public void reset() {
+        average = Double.NaN;
+    }
+}
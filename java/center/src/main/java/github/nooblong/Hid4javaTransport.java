@@ -0,0 +1,56 @@
+package github.nooblong;
+
+import org.hid4java.HidDevice;
+
+/**
+ * 基于hid4java HidDevice的传输通道
+ * 用于通过HidServices枚举得到的设备
+ */
+public class Hid4javaTransport implements HidTransport {
+
+    private final HidDevice device;
+
+    public Hid4javaTransport(HidDevice device) {
+        this.device = device;
+    }
+
+    @Override
+    public int write(byte[] data, int length, byte reportId) {
+        return device.write(data, length, reportId);
+    }
+
+    @Override
+    public int read(byte[] buffer, int timeoutMs) {
+        return device.read(buffer, timeoutMs);
+    }
+
+    @Override
+    public boolean isOpen() {
+        return device.isOpen();
+    }
+
+    @Override
+    public void close() {
+        device.close();
+    }
+
+    @Override
+    public String getPath() {
+        return device.getPath();
+    }
+
+    @Override
+    public String getSerialNumber() {
+        return device.getSerialNumber();
+    }
+
+    @Override
+    public String getProduct() {
+        return device.getProduct();
+    }
+
+    @Override
+    public String getManufacturer() {
+        return device.getManufacturer();
+    }
+}
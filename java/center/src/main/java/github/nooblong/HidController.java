@@ -3,9 +3,13 @@ package github.nooblong;
 import org.hid4java.*;
 import org.hid4java.event.*;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * ESP32 HID设备控制器
@@ -21,14 +25,53 @@ public class HidController implements HidServicesListener {
         public static final byte SET_LED_COLOR = 0x04;
         public static final byte GET_TEMPERATURE = 0x05;
         public static final byte GET_HUMIDITY = 0x06;
+        public static final byte PING = 0x07;
+        public static final byte GET_HISTORY = 0x08;
+        public static final byte SYNC_TIME = 0x09;
+        public static final byte GET_REPORT_INFO = 0x0A;
         public static final byte RESET_DEVICE = (byte) 0xFF;
     }
     
-    private HidServices hidServices;
-    private HidDevice hidDevice;
-    private boolean isConnected = false;
+    private static final int SENSOR_TIMEOUT_MS = 2000;
+    // 历史数据流中相邻报告的最长间隔
+    private static final int HISTORY_REPORT_TIMEOUT_MS = 1000;
+    private static final int SYNC_TIME_TIMEOUT_MS = 200;
+    private static final int REPORT_INFO_TIMEOUT_MS = 200;
+    private static final int MIN_REPORT_SIZE = 8;
+    private static final int MAX_REPORT_SIZE = 4096;
+    
+    /** {@link #ping} 因设备忙未能在截止时间前发送 */
+    public static final long PING_SKIPPED = Long.MIN_VALUE;
+    
+    private volatile HidServices hidServices;
+    private volatile HidTransport transport;
+    private volatile boolean isConnected = false;
+    // 串行化设备读写，保证多线程调用时请求与响应一一对应
+    private final Object ioLock = new Object();
     private final int vendorId;
     private final int productId;
+    private final DeviceCache deviceCache;
+    private final CommandScheduler commandScheduler = new CommandScheduler();
+    private final SensorReadCache sensorCache = new SensorReadCache();
+    // 后台启动的HID服务，快速连接时设备枚举和热插拔监听在后台就绪
+    private volatile CompletableFuture<HidServices> servicesReady;
+    private volatile long connectTimeNanos = -1;
+    private volatile boolean connectedFromCache = false;
+    // 最近一次收到响应的时间，用于判断链路是否空闲
+    private volatile long lastResponseNanos = 0;
+    private volatile LinkMonitor linkMonitor;
+    private volatile HistorySync historySync;
+    private volatile ClockSync clockSync;
+    // 报告格式，连接后与设备协商，协商失败时使用配置值
+    private volatile int configuredReportSize = 64;
+    private volatile byte configuredControlReportId = 0x00;
+    private volatile byte configuredBulkReportId = 0x00;
+    private volatile boolean negotiateReports = false;
+    private volatile int outputReportSize = 64;
+    private volatile int inputReportSize = 64;
+    private volatile byte controlReportId = 0x00;
+    private volatile byte bulkReportId = 0x00;
+    private volatile boolean commandLogging = true;
     
     /**
      * 构造函数
@@ -36,28 +79,45 @@ public class HidController implements HidServicesListener {
      * @param productId 产品ID
      */
     public HidController(int vendorId, int productId) {
+        this(vendorId, productId, null);
+    }
+    
+    /**
+     * 构造函数
+     * @param vendorId 供应商ID
+     * @param productId 产品ID
+     * @param deviceCache 设备身份缓存，为null时每次都完整枚举
+     */
+    public HidController(int vendorId, int productId, DeviceCache deviceCache) {
         this.vendorId = vendorId;
         this.productId = productId;
+        this.deviceCache = deviceCache;
     }
     
     /**
      * 初始化并连接到HID设备
+     * 有缓存时先按缓存路径直接打开设备，HID服务在后台启动；否则启动HID服务并枚举设备
      * @return 连接是否成功
      */
     public boolean initialize() {
+        long start = System.nanoTime();
         try {
-            // 配置HID服务
-            HidServicesSpecification spec = new HidServicesSpecification();
-            spec.setAutoShutdown(true);
-            spec.setAutoStart(false);
+            if (connectFromCache()) {
+                connectedFromCache = true;
+                connectTimeNanos = System.nanoTime() - start;
+                startServicesInBackground();
+                return true;
+            }
             
             // 启动HID服务
-            hidServices = HidManager.getHidServices(spec);
-            hidServices.addHidServicesListener(this);
-            hidServices.start();
+            servicesReady = CompletableFuture.completedFuture(startServices());
             
             // 连接到设备
-            return connectToDevice();
+            boolean connected = connectToDevice();
+            if (connected) {
+                connectTimeNanos = System.nanoTime() - start;
+            }
+            return connected;
             
         } catch (Exception e) {
             System.err.println("初始化HID控制器失败: " + e.getMessage());
@@ -65,18 +125,155 @@ public class HidController implements HidServicesListener {
         }
     }
     
+    /**
+     * 使用指定的传输通道连接，用于模拟设备等不经过HID服务的场景
+     * @param channel 已打开的传输通道
+     * @return 连接是否成功
+     */
+    public boolean connect(HidTransport channel) {
+        if (channel == null || !channel.isOpen()) {
+            return false;
+        }
+        long start = System.nanoTime();
+        transport = channel;
+        isConnected = true;
+        System.out.printf("成功连接到HID设备: %s (%s)%n", channel.getProduct(), channel.getPath());
+        onConnected();
+        connectTimeNanos = System.nanoTime() - start;
+        return true;
+    }
+    
+    /**
+     * 根据配置设置各传感器读数的缓存有效期
+     */
+    public void configureSensorCache(DeviceConfig config) {
+        for (SensorType sensor : SensorType.values()) {
+            sensorCache.setMaxAgeMs(sensor, config.getSensorMaxAgeMs(sensor));
+        }
+    }
+    
+    /**
+     * 传感器读取缓存，可用于查看命中统计或调整有效期
+     */
+    public SensorReadCache getSensorCache() {
+        return sensorCache;
+    }
+    
+    /**
+     * 按缓存的设备路径直接打开设备
+     * @return 是否连接成功
+     */
+    private boolean connectFromCache() {
+        if (deviceCache == null) {
+            return false;
+        }
+        String path = deviceCache.loadPath(vendorId, productId);
+        if (path == null) {
+            return false;
+        }
+        
+        DirectHidTransport direct = DirectHidTransport.open(path);
+        if (direct == null) {
+            System.out.println("缓存的设备路径已失效，重新枚举设备");
+            deviceCache.invalidate();
+            return false;
+        }
+        
+        // 路径可能被其他设备复用，用序列号确认是同一块板子
+        String cachedSerial = deviceCache.loadSerialNumber(vendorId, productId);
+        if (cachedSerial != null && !cachedSerial.equals(direct.getSerialNumber())) {
+            System.out.println("缓存路径上的设备序列号不匹配，重新枚举设备");
+            direct.close();
+            deviceCache.invalidate();
+            return false;
+        }
+        
+        transport = direct;
+        isConnected = true;
+        System.out.printf("成功连接到HID设备: %s (VID: 0x%04X, PID: 0x%04X, 缓存路径)%n",
+            direct.getProduct(), vendorId, productId);
+        onConnected();
+        return true;
+    }
+    
+    /**
+     * 创建并启动HID服务
+     */
+    private HidServices startServices() {
+        // 配置HID服务
+        HidServicesSpecification spec = new HidServicesSpecification();
+        spec.setAutoShutdown(true);
+        spec.setAutoStart(false);
+        
+        HidServices services = HidManager.getHidServices(spec);
+        hidServices = services;
+        services.addHidServicesListener(this);
+        services.start();
+        return services;
+    }
+    
+    /**
+     * 在后台线程启动HID服务，用于热插拔监听和设备列表
+     */
+    private void startServicesInBackground() {
+        servicesReady = CompletableFuture.supplyAsync(this::startServices, runnable -> {
+            Thread thread = new Thread(runnable, "hid-services-start");
+            thread.setDaemon(true);
+            thread.start();
+        });
+        servicesReady.exceptionally(e -> {
+            System.err.println("后台启动HID服务失败: " + e.getMessage());
+            return null;
+        });
+    }
+    
+    /**
+     * 等待HID服务就绪
+     * @return HID服务，未初始化或启动失败返回null
+     */
+    private HidServices awaitServices() {
+        CompletableFuture<HidServices> ready = servicesReady;
+        if (ready == null) {
+            return null;
+        }
+        try {
+            return ready.get(10, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+    
+    /**
+     * 获取已启动完成的HID服务，不等待
+     * @return HID服务，尚未启动完成或启动失败返回null
+     */
+    private HidServices readyServices() {
+        CompletableFuture<HidServices> ready = servicesReady;
+        if (ready == null || !ready.isDone() || ready.isCompletedExceptionally()) {
+            return null;
+        }
+        return ready.join();
+    }
+    
     /**
      * 连接到指定的HID设备
      * @return 连接是否成功
      */
     private boolean connectToDevice() {
-        hidDevice = hidServices.getHidDevice(vendorId, productId, null);
+        HidServices services = hidServices;
+        HidDevice hidDevice = services != null ? services.getHidDevice(vendorId, productId, null) : null;
         
         if (hidDevice != null) {
-            isConnected = hidDevice.open();
-            if (isConnected) {
+            boolean opened = hidDevice.isOpen() || hidDevice.open();
+            if (opened) {
+                transport = new Hid4javaTransport(hidDevice);
+                isConnected = true;
                 System.out.printf("成功连接到HID设备: %s (VID: 0x%04X, PID: 0x%04X)%n",
                     hidDevice.getProduct(), vendorId, productId);
+                if (deviceCache != null) {
+                    deviceCache.save(vendorId, productId, hidDevice.getPath(), hidDevice.getSerialNumber());
+                }
+                onConnected();
                 return true;
             } else {
                 System.err.println("无法打开HID设备");
@@ -89,33 +286,179 @@ public class HidController implements HidServicesListener {
     }
     
     /**
-     * 发送命令到ESP32设备
+     * 连接建立后的处理: 协商报告格式，补齐断开期间设备缓存的采样
+     */
+    private void onConnected() {
+        // 不使用上一次连接的读数
+        sensorCache.invalidate();
+        negotiateReportFormat();
+        HistorySync sync = historySync;
+        if (sync != null) {
+            sync.download();
+        }
+    }
+    
+    /**
+     * 设置报告格式的默认值
+     * 设备支持协商时连接后以设备回复为准，否则使用这里的配置
+     */
+    public void configureReports(DeviceConfig config) {
+        configuredReportSize = clampReportSize(config.getReportSize());
+        configuredControlReportId = (byte) config.getControlReportId();
+        configuredBulkReportId = (byte) config.getBulkReportId();
+        negotiateReports = config.isReportNegotiationEnabled();
+        applyReportFormat(configuredReportSize, configuredReportSize, configuredControlReportId, configuredBulkReportId);
+    }
+    
+    /**
+     * 向设备查询报告格式
+     * 回复格式: [GET_REPORT_INFO, 输出报告大小(2字节), 输入报告大小(2字节), 控制报告ID, 批量报告ID]
+     */
+    private void negotiateReportFormat() {
+        applyReportFormat(configuredReportSize, configuredReportSize, configuredControlReportId, configuredBulkReportId);
+        if (!negotiateReports) {
+            return;
+        }
+        
+        synchronized (ioLock) {
+            byte[] response = null;
+            if (writeCommand(Commands.GET_REPORT_INFO, new byte[0], false)) {
+                response = readResponse(REPORT_INFO_TIMEOUT_MS);
+            }
+            if (response == null || response.length < 7 || response[0] != Commands.GET_REPORT_INFO) {
+                System.out.printf("设备未提供报告格式，使用配置: %d 字节%n", configuredReportSize);
+                return;
+            }
+            
+            int outputSize = ((response[1] & 0xFF) << 8) | (response[2] & 0xFF);
+            int inputSize = ((response[3] & 0xFF) << 8) | (response[4] & 0xFF);
+            applyReportFormat(clampReportSize(outputSize), clampReportSize(inputSize), response[5], response[6]);
+            System.out.printf("报告格式协商完成: 输出 %d 字节, 输入 %d 字节, 控制报告ID 0x%02X, 批量报告ID 0x%02X%n",
+                outputReportSize, inputReportSize, controlReportId & 0xFF, bulkReportId & 0xFF);
+        }
+    }
+    
+    private void applyReportFormat(int outputSize, int inputSize, byte controlId, byte bulkId) {
+        outputReportSize = outputSize;
+        inputReportSize = inputSize;
+        controlReportId = controlId;
+        bulkReportId = bulkId;
+    }
+    
+    private static int clampReportSize(int size) {
+        return Math.max(MIN_REPORT_SIZE, Math.min(MAX_REPORT_SIZE, size));
+    }
+    
+    /**
+     * 是否使用带编号的报告 (报告ID不为0时，输入报告首字节为报告ID)
+     */
+    private boolean isNumberedReports() {
+        return controlReportId != 0 || bulkReportId != 0;
+    }
+    
+    public int getOutputReportSize() {
+        return outputReportSize;
+    }
+    
+    public int getInputReportSize() {
+        return inputReportSize;
+    }
+    
+    public byte getControlReportId() {
+        return controlReportId;
+    }
+    
+    public byte getBulkReportId() {
+        return bulkReportId;
+    }
+    
+    /**
+     * 发送命令到ESP32设备，使用命令的默认优先级
      * @param command 命令字节
      * @param data 附加数据 (可选)
      * @return 发送是否成功
      */
     public boolean sendCommand(byte command, byte... data) {
-        if (!isConnected || hidDevice == null) {
+        return sendCommand(CommandPriority.defaultFor(command), 0, command, data);
+    }
+    
+    /**
+     * 按指定优先级发送命令并等待发送完成
+     * @param priority 优先级
+     * @param deadlineMs 截止时间(毫秒)，到期仍未发送则放弃；0表示不限制
+     * @param command 命令字节
+     * @param data 附加数据 (可选)
+     * @return 发送是否成功，过期或取消时返回false
+     */
+    public boolean sendCommand(CommandPriority priority, long deadlineMs, byte command, byte... data) {
+        Boolean result = await(submitCommand(priority, deadlineMs, command, data), command);
+        return result != null && result;
+    }
+    
+    /**
+     * 提交命令到调度器
+     * @param priority 优先级
+     * @param deadlineMs 截止时间(毫秒)，0表示不限制
+     * @param command 命令字节
+     * @param data 附加数据 (可选)
+     * @return 发送结果，可通过cancel在发送前撤销
+     */
+    public CompletableFuture<Boolean> submitCommand(CommandPriority priority, long deadlineMs, byte command, byte... data) {
+        return submitCommand(priority, deadlineMs, null, command, data);
+    }
+    
+    /**
+     * 提交命令到调度器，命令开始执行时回调
+     * @param onStart 在IO线程上、写入设备之前调用，命令过期或取消时不调用；可为null
+     */
+    public CompletableFuture<Boolean> submitCommand(CommandPriority priority, long deadlineMs, Runnable onStart, byte command, byte... data) {
+        return commandScheduler.submit(priority, deadlineMs, () -> {
+            if (onStart != null) {
+                onStart.run();
+            }
+            return writeCommand(command, data, true);
+        });
+    }
+    
+    /**
+     * 将命令写入设备，只在IO线程上调用
+     */
+    private boolean writeCommand(byte command, byte[] data, boolean verbose) {
+        return writeReport(controlReportId, command, data, verbose);
+    }
+    
+    /**
+     * 以指定报告ID写入命令，只在IO线程上调用
+     */
+    private boolean writeReport(byte reportId, byte command, byte[] data, boolean verbose) {
+        HidTransport current = transport;
+        if (!isConnected || current == null) {
             System.err.println("设备未连接");
             return false;
         }
         
         try {
-            // 创建数据包
-            byte[] packet = new byte[64]; // 标准HID报告大小
-            packet[0] = 0x00; // 报告ID
-            packet[1] = command; // 命令
+            // 创建数据包，大小为协商的输出报告大小
+            // 报告ID为0时保持原有格式 [0x00, 命令, 数据...]；编号报告的ID由传输层添加，数据包以命令开头
+            byte[] packet = new byte[outputReportSize];
+            int offset = commandOffset(reportId);
+            packet[offset] = command; // 命令
             
             // 添加附加数据
             if (data != null && data.length > 0) {
-                System.arraycopy(data, 0, packet, 2, Math.min(data.length, 62));
+                System.arraycopy(data, 0, packet, offset + 1, Math.min(data.length, packet.length - offset - 1));
             }
             
             // 发送数据
-            int result = hidDevice.write(packet, packet.length, (byte)0x00);
+            int result;
+            synchronized (ioLock) {
+                result = current.write(packet, packet.length, reportId);
+            }
             
             if (result >= 0) {
-                System.out.printf("命令发送成功: 0x%02X%n", command & 0xFF);
+                if (verbose && commandLogging) {
+                    System.out.printf("命令发送成功: 0x%02X%n", command & 0xFF);
+                }
                 return true;
             } else {
                 System.err.printf("命令发送失败: 0x%02X (错误: %d)%n", command & 0xFF, result);
@@ -128,6 +471,21 @@ public class HidController implements HidServicesListener {
         }
     }
     
+    /**
+     * 命令字节在输出数据包中的位置
+     * 报告ID为0时与现有固件一致，首字节固定为0x00、命令在第二个字节；编号报告不重复报告ID，命令在首字节
+     */
+    static int commandOffset(byte reportId) {
+        return reportId == 0 ? 1 : 0;
+    }
+    
+    /**
+     * 设置是否打印每条命令的发送日志，压力测试等高频场景应关闭
+     */
+    public void setCommandLogging(boolean enabled) {
+        commandLogging = enabled;
+    }
+    
     /**
      * 异步发送命令
      * @param command 命令字节
@@ -135,7 +493,7 @@ public class HidController implements HidServicesListener {
      * @return CompletableFuture<Boolean>
      */
     public CompletableFuture<Boolean> sendCommandAsync(byte command, byte... data) {
-        return CompletableFuture.supplyAsync(() -> sendCommand(command, data));
+        return submitCommand(CommandPriority.defaultFor(command), 0, command, data);
     }
     
     /**
@@ -144,18 +502,39 @@ public class HidController implements HidServicesListener {
      * @return 读取到的数据，如果失败返回null
      */
     public byte[] readResponse(int timeoutMs) {
-        if (!isConnected || hidDevice == null) {
+        InboundReport report = readReport(timeoutMs);
+        return report != null ? report.getData() : null;
+    }
+    
+    /**
+     * 读取设备输入报告，附带接收时间和设备时间
+     * @param timeoutMs 超时时间(毫秒)
+     * @return 输入报告，如果失败返回null
+     */
+    public InboundReport readReport(int timeoutMs) {
+        HidTransport current = transport;
+        if (!isConnected || current == null) {
             return null;
         }
         
         try {
-            byte[] buffer = new byte[64];
-            int bytesRead = hidDevice.read(buffer, timeoutMs);
+            // 带编号的报告首字节为报告ID
+            boolean numbered = isNumberedReports();
+            int prefix = numbered ? 1 : 0;
+            byte[] buffer = new byte[inputReportSize + prefix];
+            int bytesRead;
+            synchronized (ioLock) {
+                bytesRead = current.read(buffer, timeoutMs);
+            }
             
-            if (bytesRead > 0) {
-                byte[] result = new byte[bytesRead];
-                System.arraycopy(buffer, 0, result, 0, bytesRead);
-                return result;
+            if (bytesRead > prefix) {
+                long received = System.nanoTime();
+                lastResponseNanos = received;
+                byte[] result = new byte[bytesRead - prefix];
+                System.arraycopy(buffer, prefix, result, 0, result.length);
+                ClockSync sync = clockSync;
+                return new InboundReport(result, numbered ? buffer[0] : 0, received,
+                    sync != null ? sync.estimateDeviceSendTimeUs(received) : -1);
             }
             
         } catch (Exception e) {
@@ -173,12 +552,85 @@ public class HidController implements HidServicesListener {
      * @return 响应数据
      */
     public byte[] sendCommandWithResponse(byte command, int timeoutMs, byte... data) {
-        if (sendCommand(command, data)) {
-            return readResponse(timeoutMs);
+        return sendCommandWithResponse(CommandPriority.defaultFor(command), 0, command, timeoutMs, data);
+    }
+    
+    /**
+     * 按指定优先级发送命令并等待响应
+     * @param priority 优先级
+     * @param deadlineMs 截止时间(毫秒)，到期仍未发送则放弃；0表示不限制
+     * @param command 命令字节
+     * @param timeoutMs 读取响应的超时时间
+     * @param data 附加数据
+     * @return 响应数据，失败、过期或取消时返回null
+     */
+    public byte[] sendCommandWithResponse(CommandPriority priority, long deadlineMs, byte command, int timeoutMs, byte... data) {
+        return await(submitCommandWithResponse(priority, deadlineMs, command, timeoutMs, data), command);
+    }
+    
+    /**
+     * 提交需要响应的命令到调度器
+     * @return 响应数据，失败时为null
+     */
+    public CompletableFuture<byte[]> submitCommandWithResponse(CommandPriority priority, long deadlineMs, byte command, int timeoutMs, byte... data) {
+        return submitCommandWithReport(priority, deadlineMs, command, timeoutMs, data)
+            .thenApply(report -> report != null ? report.getData() : null);
+    }
+    
+    /**
+     * 提交需要响应的命令到调度器，响应附带时间戳
+     * @return 输入报告，失败时为null
+     */
+    public CompletableFuture<InboundReport> submitCommandWithReport(CommandPriority priority, long deadlineMs, byte command, int timeoutMs, byte... data) {
+        return submitCommandWithReport(priority, deadlineMs, null, command, timeoutMs, data);
+    }
+    
+    /**
+     * 提交需要响应的命令到调度器，命令开始执行时回调
+     * @param onStart 在IO线程上、写入设备之前调用，命令过期或取消时不调用；可为null
+     * @return 输入报告，失败时为null
+     */
+    public CompletableFuture<InboundReport> submitCommandWithReport(CommandPriority priority, long deadlineMs, Runnable onStart,
+                                                                    byte command, int timeoutMs, byte... data) {
+        return commandScheduler.submit(priority, deadlineMs, () -> {
+            if (onStart != null) {
+                onStart.run();
+            }
+            // 发送与读取在同一把锁内完成，避免其他线程的响应被错读
+            synchronized (ioLock) {
+                if (writeCommand(command, data, true)) {
+                    return readReport(timeoutMs);
+                }
+                return null;
+            }
+        });
+    }
+    
+    /**
+     * 等待调度结果，过期、取消或出错时返回null
+     */
+    private <T> T await(CompletableFuture<T> future, byte command) {
+        try {
+            return future.join();
+        } catch (CancellationException e) {
+            System.err.printf("命令已取消: 0x%02X%n", command & 0xFF);
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof TimeoutException) {
+                System.err.printf("命令已过期，未发送: 0x%02X%n", command & 0xFF);
+            } else {
+                System.err.println("执行命令时出错: " + e.getCause().getMessage());
+            }
         }
         return null;
     }
     
+    /**
+     * 命令调度器，可用于查看各优先级队列的统计
+     */
+    public CommandScheduler getCommandScheduler() {
+        return commandScheduler;
+    }
+    
     /**
      * 清空ESP32控制台
      */
@@ -216,49 +668,355 @@ public class HidController implements HidServicesListener {
     }
     
     /**
-     * 获取温度数据
-     * @return 温度值，失败返回null
+     * 重置设备
      */
-    public Float getTemperature() {
-        byte[] response = sendCommandWithResponse(Commands.GET_TEMPERATURE, 2000);
+    public boolean resetDevice() {
+        return sendCommand(Commands.RESET_DEVICE);
+    }
+    
+    /**
+     * 发送心跳并测量往返时间
+     * 心跳使用控制优先级，设备忙于其他命令导致超过截止时间时不发送
+     * @param sequence 心跳序号 (0-65535)，设备需原样回显
+     * @param timeoutMs 等待回复的超时时间，同时作为发送截止时间
+     * @return 往返时间(纳秒)；丢失返回-1；未发送返回 {@link #PING_SKIPPED}
+     */
+    public long ping(int sequence, int timeoutMs) {
+        if (!isConnected()) {
+            return -1;
+        }
+        byte high = (byte) (sequence >> 8);
+        byte low = (byte) sequence;
+        
+        CompletableFuture<Long> result = commandScheduler.submit(CommandPriority.CONTROL, timeoutMs, () -> {
+            synchronized (ioLock) {
+                long start = System.nanoTime();
+                if (!writeCommand(Commands.PING, new byte[] {high, low}, false)) {
+                    return -1L;
+                }
+                byte[] response = readResponse(timeoutMs);
+                long rtt = System.nanoTime() - start;
+                // 回复格式: [PING, 序号高字节, 序号低字节]
+                if (response != null && response.length >= 3
+                        && response[0] == Commands.PING && response[1] == high && response[2] == low) {
+                    return rtt;
+                }
+                return -1L;
+            }
+        });
+        
+        try {
+            return result.join();
+        } catch (CompletionException e) {
+            return e.getCause() instanceof TimeoutException ? PING_SKIPPED : -1;
+        }
+    }
+    
+    /**
+     * 最近一次收到设备响应的时间 (System.nanoTime)，从未收到时为0
+     */
+    public long getLastResponseNanos() {
+        return lastResponseNanos;
+    }
+    
+    /**
+     * 根据配置启动链路质量监控，链路断开时自动尝试重新连接
+     */
+    public synchronized LinkMonitor startLinkMonitor(DeviceConfig config) {
+        if (linkMonitor == null && config.isHeartbeatEnabled()) {
+            linkMonitor = new LinkMonitor(this,
+                config.getHeartbeatMinIntervalMs(),
+                config.getHeartbeatMaxIntervalMs(),
+                config.getHeartbeatTimeoutMs(),
+                config.getHeartbeatDegradedQuality());
+            linkMonitor.addListener((previous, current, monitor) -> {
+                if (current == LinkMonitor.State.DOWN && reconnect()) {
+                    monitor.reset();
+                }
+            });
+            linkMonitor.start();
+        }
+        return linkMonitor;
+    }
+    
+    /**
+     * 链路质量监控，未启动时返回null
+     */
+    public LinkMonitor getLinkMonitor() {
+        return linkMonitor;
+    }
+    
+    /**
+     * 链路是否已降级或断开，未启动监控时总是返回false
+     */
+    public boolean isDegraded() {
+        LinkMonitor monitor = linkMonitor;
+        return monitor != null && monitor.isDegraded();
+    }
+    
+    /**
+     * 关闭当前连接并重新连接设备
+     * @return 是否重新连接成功
+     */
+    public boolean reconnect() {
+        System.out.println("尝试重新连接设备...");
+        synchronized (ioLock) {
+            isConnected = false;
+            HidTransport stale = transport;
+            if (stale != null) {
+                stale.close();
+            }
+            // HID服务仍在后台启动时先按缓存路径打开，不等待服务
+            if (readyServices() == null && connectFromCache()) {
+                return true;
+            }
+        }
+        HidServices services = awaitServices();
+        synchronized (ioLock) {
+            if (isConnected) {
+                return true;
+            }
+            if (services == null) {
+                System.err.println("HID服务未就绪，无法重新连接");
+                return false;
+            }
+            services.scan();
+            return connectToDevice();
+        }
+    }
+    
+    /**
+     * 批量下载设备缓存的历史采样
+     * 发送一次请求后设备连续回复多个报告，每个报告打包多条增量编码的记录，直到没有更多数据
+     * @param fromSequence 起始序号
+     * @param listener 按序号顺序接收采样
+     * @return 收到的报告数，设备未连接或请求发送失败时为-1
+     */
+    public CompletableFuture<Integer> downloadHistory(long fromSequence, HistoryListener listener) {
+        byte[] request = {
+            (byte) (fromSequence >> 24),
+            (byte) (fromSequence >> 16),
+            (byte) (fromSequence >> 8),
+            (byte) fromSequence
+        };
+        
+        return commandScheduler.submit(CommandPriority.BACKGROUND, 0, () -> {
+            synchronized (ioLock) {
+                // 历史数据走批量报告，不占用控制报告
+                if (!isConnected() || !writeReport(bulkReportId, Commands.GET_HISTORY, request, true)) {
+                    return -1;
+                }
+                
+                List<HistorySample> batch = new ArrayList<>();
+                int reports = 0;
+                while (true) {
+                    InboundReport inbound = readReport(HISTORY_REPORT_TIMEOUT_MS);
+                    if (inbound == null) {
+                        System.err.println("历史数据下载中断: 等待报告超时");
+                        break;
+                    }
+                    if (isNumberedReports() && inbound.getReportId() != bulkReportId) {
+                        // 不是批量报告，忽略
+                        continue;
+                    }
+                    byte[] report = inbound.getData();
+                    
+                    int flags;
+                    batch.clear();
+                    try {
+                        flags = HistoryCodec.decode(report, batch);
+                    } catch (IllegalArgumentException e) {
+                        System.err.println("历史数据报告无效: " + e.getMessage());
+                        break;
+                    }
+                    reports++;
+                    
+                    if ((flags & HistoryCodec.FLAG_OVERFLOW) != 0 && reports == 1) {
+                        System.out.println("设备历史缓冲区已覆盖部分旧数据，断开期间的采样不完整");
+                    }
+                    for (HistorySample sample : batch) {
+                        listener.onSample(sample);
+                    }
+                    if ((flags & HistoryCodec.FLAG_MORE) == 0) {
+                        break;
+                    }
+                }
+                return reports;
+            }
+        });
+    }
+    
+    /**
+     * 与设备交换一次时间
+     * @return {主机发送时间ns, 设备时间us, 主机接收时间ns}，失败返回null
+     */
+    public long[] exchangeTime() {
+        if (!isConnected()) {
+            return null;
+        }
+        CompletableFuture<long[]> result = commandScheduler.submit(CommandPriority.BACKGROUND, 0, () -> {
+            synchronized (ioLock) {
+                long sent = System.nanoTime();
+                if (!writeCommand(Commands.SYNC_TIME, new byte[0], false)) {
+                    return null;
+                }
+                byte[] response = readResponse(SYNC_TIME_TIMEOUT_MS);
+                long received = System.nanoTime();
+                // 回复格式: [SYNC_TIME, 设备时间(微秒, 8字节大端)]
+                if (response == null || response.length < 9 || response[0] != Commands.SYNC_TIME) {
+                    return null;
+                }
+                long deviceTime = 0;
+                for (int i = 1; i <= 8; i++) {
+                    deviceTime = (deviceTime << 8) | (response[i] & 0xFF);
+                }
+                return new long[] {sent, deviceTime, received};
+            }
+        });
+        try {
+            return result.join();
+        } catch (CompletionException | CancellationException e) {
+            return null;
+        }
+    }
+    
+    /**
+     * 根据配置启动时钟同步
+     */
+    public synchronized ClockSync startClockSync(DeviceConfig config) {
+        if (clockSync == null && config.isClockSyncEnabled()) {
+            clockSync = new ClockSync(this, config.getClockSyncSamples(),
+                TimeUnit.SECONDS.toMillis(config.getClockSyncIntervalSeconds()));
+            clockSync.start();
+        }
+        return clockSync;
+    }
+    
+    /**
+     * 时钟同步，未启动时返回null
+     */
+    public ClockSync getClockSync() {
+        return clockSync;
+    }
+    
+    /**
+     * 根据配置启动历史数据同步，已连接时立即下载一次
+     */
+    public synchronized HistorySync startHistorySync(DeviceConfig config) {
+        if (historySync == null && config.isHistoryEnabled()) {
+            historySync = new HistorySync(this, deviceCache, vendorId, productId, config.getHistoryBufferSize());
+            if (isConnected()) {
+                historySync.download();
+            }
+        }
+        return historySync;
+    }
+    
+    /**
+     * 历史数据同步，未启动时返回null
+     */
+    public HistorySync getHistorySync() {
+        return historySync;
+    }
+    
+    /**
+     * 读取指定传感器
+     * @param sensor 传感器类型
+     * @return 传感器值，失败返回null
+     */
+    public Float readSensor(SensorType sensor) {
+        return readSensor(sensor, CommandPriority.INTERACTIVE, 0);
+    }
+    
+    /**
+     * 按指定优先级读取传感器
+     * @param sensor 传感器类型
+     * @param priority 优先级
+     * @param deadlineMs 截止时间(毫秒)，到期仍未发送则放弃；0表示不限制
+     * @return 传感器值，失败、过期或取消时返回null
+     */
+    public Float readSensor(SensorType sensor, CommandPriority priority, long deadlineMs) {
+        SensorReading reading = readSensorReading(sensor, priority, deadlineMs);
+        return reading != null ? reading.getValue() : null;
+    }
+    
+    /**
+     * 按指定优先级读取传感器，读数附带主机接收时间和设备时间
+     * 在传感器配置的有效期内直接返回缓存读数，相同优先级的并发读取合并为一次设备往返
+     * @param sensor 传感器类型
+     * @param priority 优先级
+     * @param deadlineMs 截止时间(毫秒)，到期仍未发送则放弃；0表示不限制
+     * @return 传感器读数，失败、过期或取消时返回null
+     */
+    public SensorReading readSensorReading(SensorType sensor, CommandPriority priority, long deadlineMs) {
+        return sensorCache.get(sensor, priority, () -> readSensorFromDevice(sensor, priority, deadlineMs, SENSOR_TIMEOUT_MS));
+    }
+    
+    /**
+     * 按指定优先级和数据新鲜度读取传感器
+     * @param maxAgeMs 可接受的最长数据年龄(毫秒)，0表示必须读取设备 (仍会与进行中的读取合并)
+     * @return 传感器读数，失败、过期或取消时返回null
+     */
+    public SensorReading readSensorReading(SensorType sensor, CommandPriority priority, long deadlineMs, long maxAgeMs) {
+        return readSensorReading(sensor, priority, deadlineMs, maxAgeMs, SENSOR_TIMEOUT_MS);
+    }
+    
+    /**
+     * 按指定优先级、数据新鲜度和响应超时读取传感器
+     * 读取期间IO线程被占用，较短的超时可以限制一个无响应的传感器阻塞其他命令的时间
+     * @param timeoutMs 等待设备响应的超时时间(毫秒)
+     * @return 传感器读数，失败、超时、过期或取消时返回null
+     */
+    public SensorReading readSensorReading(SensorType sensor, CommandPriority priority, long deadlineMs, long maxAgeMs, int timeoutMs) {
+        return sensorCache.get(sensor, maxAgeMs, priority, () -> readSensorFromDevice(sensor, priority, deadlineMs, timeoutMs));
+    }
+    
+    /**
+     * 从设备读取传感器，不经过缓存
+     */
+    private SensorReading readSensorFromDevice(SensorType sensor, CommandPriority priority, long deadlineMs, int timeoutMs) {
+        InboundReport report = await(
+            submitCommandWithReport(priority, deadlineMs, sensor.getCommand(), timeoutMs), sensor.getCommand());
+        byte[] response = report != null ? report.getData() : null;
         if (response != null && response.length >= 4) {
             // 假设ESP32返回4字节的浮点数
             int bits = ((response[0] & 0xFF) << 24) |
                       ((response[1] & 0xFF) << 16) |
                       ((response[2] & 0xFF) << 8) |
                       (response[3] & 0xFF);
-            return Float.intBitsToFloat(bits);
+            return new SensorReading(sensor, Float.intBitsToFloat(bits),
+                report.getHostReceiveNanos(), report.getDeviceTimeUs());
         }
         return null;
     }
     
+    /**
+     * 获取温度数据
+     * @return 温度值，失败返回null
+     */
+    public Float getTemperature() {
+        return readSensor(SensorType.TEMPERATURE);
+    }
+    
     /**
      * 获取湿度数据
      * @return 湿度值，失败返回null
      */
     public Float getHumidity() {
-        byte[] response = sendCommandWithResponse(Commands.GET_HUMIDITY, 2000);
-        if (response != null && response.length >= 4) {
-            // 假设ESP32返回4字节的浮点数
-            int bits = ((response[0] & 0xFF) << 24) |
-                      ((response[1] & 0xFF) << 16) |
-                      ((response[2] & 0xFF) << 8) |
-                      (response[3] & 0xFF);
-            return Float.intBitsToFloat(bits);
-        }
-        return null;
+        return readSensor(SensorType.HUMIDITY);
     }
     
     /**
      * 列出所有可用的HID设备
      */
     public void listAvailableDevices() {
-        if (hidServices == null) {
+        HidServices services = awaitServices();
+        if (services == null) {
             System.out.println("HID服务未初始化");
             return;
         }
         
-        List<HidDevice> devices = hidServices.getAttachedHidDevices();
+        List<HidDevice> devices = services.getAttachedHidDevices();
         System.out.println("可用的HID设备:");
         System.out.println("================");
         
@@ -277,37 +1035,69 @@ public class HidController implements HidServicesListener {
      * 检查设备是否已连接
      */
     public boolean isConnected() {
-        return isConnected && hidDevice != null && hidDevice.isOpen();
+        HidTransport current = transport;
+        return isConnected && current != null && current.isOpen();
     }
     
     /**
      * 获取设备信息
      */
     public String getDeviceInfo() {
-        if (hidDevice != null) {
+        HidTransport current = transport;
+        if (current != null) {
             return String.format("产品: %s, 制造商: %s, VID: 0x%04X, PID: 0x%04X",
-                hidDevice.getProduct(),
-                hidDevice.getManufacturer(),
-                hidDevice.getVendorId(),
-                hidDevice.getProductId()
+                current.getProduct(),
+                current.getManufacturer(),
+                vendorId,
+                productId
             );
         }
         return "无设备连接";
     }
     
+    /**
+     * 最近一次连接耗时(纳秒)，未连接返回-1
+     */
+    public long getConnectTimeNanos() {
+        return connectTimeNanos;
+    }
+    
+    /**
+     * 最近一次连接是否使用了缓存路径
+     */
+    public boolean isConnectedFromCache() {
+        return connectedFromCache;
+    }
+    
     /**
      * 关闭连接并清理资源
      */
     public void close() {
         try {
-            if (hidDevice != null && hidDevice.isOpen()) {
-                hidDevice.close();
+            LinkMonitor monitor = linkMonitor;
+            if (monitor != null) {
+                monitor.stop();
+            }
+            ClockSync sync = clockSync;
+            if (sync != null) {
+                sync.stop();
+            }
+            commandScheduler.shutdown();
+            
+            HidTransport current = transport;
+            if (current != null && current.isOpen()) {
+                current.close();
                 System.out.println("HID设备连接已关闭");
             }
             
-            if (hidServices != null) {
-                hidServices.stop();
+            // 服务仍在后台启动时不等待，启动完成后再停止
+            CompletableFuture<HidServices> ready = servicesReady;
+            HidServices services = readyServices();
+            if (services != null) {
+                services.stop();
                 System.out.println("HID服务已停止");
+            } else if (ready != null && !ready.isDone()) {
+                ready.thenAccept(started -> started.stop());
             }
             
             isConnected = false;
@@ -324,6 +1114,10 @@ public class HidController implements HidServicesListener {
         if (device.getVendorId() == vendorId && device.getProductId() == productId) {
             System.out.println("目标HID设备已连接: " + device.getProduct());
             if (!isConnected) {
+                HidTransport stale = transport;
+                if (stale != null && !(stale instanceof Hid4javaTransport)) {
+                    stale.close();
+                }
                 connectToDevice();
             }
         }
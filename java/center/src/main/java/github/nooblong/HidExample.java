@@ -1,8 +1,11 @@
 package github.nooblong;
 
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
 import java.util.Scanner;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -16,7 +19,10 @@ public class HidExample {
     private static final int PRODUCT_ID = 0x8000; // 需要根据实际情况修改
     
     private HidController controller;
-    private ScheduledExecutorService scheduler;
+    private SensorPoller poller;
+    private TimelineScheduler timeline;
+    private final Map<SensorType, SensorPipeline> pipelines = new EnumMap<>(SensorType.class);
+    private RulesEngine rulesEngine;
     
     public static void main(String[] args) {
         HidExample example = new HidExample();
@@ -32,6 +38,8 @@ public class HidExample {
         
         // 初始化控制器
         controller = new HidController(config.getVendorId(), config.getProductId());
+        controller.configureReports(config);
+        controller.configureSensorCache(config);
         
         if (!controller.initialize()) {
             System.err.println("初始化失败，显示可用设备:");
@@ -64,13 +72,17 @@ public class HidExample {
         startInteractiveMode();
         
         // 清理资源 (不关闭外部控制器)
-        if (scheduler != null && !scheduler.isShutdown()) {
-            scheduler.shutdown();
+        if (poller != null) {
+            poller.stop();
+        }
+        if (timeline != null) {
+            timeline.shutdown();
         }
     }
     
     /**
      * 启动定期数据读取
+     * 原始值先经过各传感器的处理管道，只有管道输出的有效变化才会显示并交给规则引擎
      */
     private void startPeriodicDataReading(DeviceConfig config) {
         if (!config.isTemperatureEnabled() && !config.isHumidityEnabled()) {
@@ -78,38 +90,57 @@ public class HidExample {
             return;
         }
         
-        scheduler = Executors.newScheduledThreadPool(1);
-        
-        // 根据配置的间隔读取传感器数据
-        scheduler.scheduleAtFixedRate(() -> {
+        for (SensorType sensor : SensorType.values()) {
             try {
-                boolean hasData = false;
-                StringBuilder data = new StringBuilder("传感器数据 - ");
-                
-                if (config.isTemperatureEnabled()) {
-                    Float temperature = controller.getTemperature();
-                    if (temperature != null) {
-                        data.append(String.format("温度: %.1f°C", temperature));
-                        hasData = true;
-                    }
-                }
-                
-                if (config.isHumidityEnabled()) {
-                    Float humidity = controller.getHumidity();
-                    if (humidity != null) {
-                        if (hasData) data.append(", ");
-                        data.append(String.format("湿度: %.1f%%", humidity));
-                        hasData = true;
-                    }
-                }
-                
-                if (hasData) {
-                    System.out.println(data.toString());
-                }
-            } catch (Exception e) {
-                System.err.println("读取传感器数据失败: " + e.getMessage());
+                pipelines.put(sensor, SensorPipeline.parse(sensor, config.getSensorPipeline(sensor)));
+            } catch (IllegalArgumentException e) {
+                System.err.printf("%s处理管道配置无效 (%s)，不做处理%n", sensor.getDisplayName(), e.getMessage());
+                pipelines.put(sensor, new SensorPipeline(sensor));
             }
-        }, 5, config.getSensorInterval(), TimeUnit.SECONDS);
+        }
+        
+        rulesEngine = loadRules(config);
+        
+        // 每个传感器独立轮询，间隔随数据变化速度自适应
+        poller = new SensorPoller(controller, this::onSensorReading);
+        poller.addEnabledSensors(config);
+        poller.start(TimeUnit.SECONDS.toMillis(5));
+    }
+    
+    /**
+     * 处理轮询到的传感器读数，在该传感器的轮询线程上调用
+     */
+    private void onSensorReading(SensorReading reading) {
+        SensorType sensor = reading.getSensor();
+        double filtered = pipelines.get(sensor).process(reading.getValue());
+        if (Double.isNaN(filtered)) {
+            return;
+        }
+        if (rulesEngine != null) {
+            rulesEngine.evaluate(sensor, filtered, reading.getHostReceiveNanos());
+        }
+        System.out.printf("传感器数据 - %s: %.1f%s%n", sensor.getDisplayName(), filtered, sensor.getUnit());
+    }
+    
+    /**
+     * 加载配置的规则文件
+     * @return 规则引擎，未配置或加载失败时返回null
+     */
+    private RulesEngine loadRules(DeviceConfig config) {
+        String rulesFile = config.getRulesFile();
+        if (rulesFile.isEmpty()) {
+            return null;
+        }
+        try {
+            RulesEngine engine = RulesEngine.load(controller, Paths.get(rulesFile));
+            System.out.printf("已加载 %d 条规则: %s%n", engine.getRules().size(), rulesFile);
+            return engine;
+        } catch (IOException e) {
+            System.err.println("读取规则文件失败: " + e.getMessage());
+        } catch (IllegalArgumentException e) {
+            System.err.println("规则无效: " + e.getMessage());
+        }
+        return null;
     }
     
     /**
@@ -151,6 +182,8 @@ public class HidExample {
                     testBatchCommands();
                 } else if ("9".equals(input)) {
                     customCommand(scanner);
+                } else if ("10".equals(input)) {
+                    runScriptFile(scanner);
                 } else {
                     System.out.println("未知命令: " + input + " (输入 'help' 查看帮助)");
                 }
@@ -177,6 +210,7 @@ public class HidExample {
         System.out.println("7  - 读取所有传感器");
         System.out.println("8  - 测试批量命令");
         System.out.println("9  - 自定义命令");
+        System.out.println("10 - 运行命令脚本");
         System.out.println("list   - 列出可用设备");
         System.out.println("status - 显示设备状态");
         System.out.println("help   - 显示此帮助");
@@ -190,6 +224,26 @@ public class HidExample {
         System.out.println("\n设备状态:");
         System.out.println("连接状态: " + (controller.isConnected() ? "已连接" : "未连接"));
         System.out.println("设备信息: " + controller.getDeviceInfo());
+        System.out.printf("报告格式: 输出 %d 字节, 输入 %d 字节, 控制报告ID 0x%02X, 批量报告ID 0x%02X%n",
+            controller.getOutputReportSize(), controller.getInputReportSize(),
+            controller.getControlReportId() & 0xFF, controller.getBulkReportId() & 0xFF);
+        LinkMonitor monitor = controller.getLinkMonitor();
+        if (monitor != null) {
+            System.out.println("链路状态: " + monitor.getState().getDisplayName() + " (" + monitor.summary() + ")");
+        }
+        ClockSync clockSync = controller.getClockSync();
+        if (clockSync != null) {
+            System.out.println("时钟同步: " + clockSync.summary());
+        }
+        System.out.println("传感器读取: " + controller.getSensorCache().summary());
+        if (poller != null) {
+            System.out.println("传感器轮询:");
+            System.out.println(poller.summary());
+        }
+        if (rulesEngine != null) {
+            System.out.println("规则引擎: " + rulesEngine.summary());
+        }
+        System.out.print(controller.getCommandScheduler().summary());
     }
     
     /**
@@ -262,41 +316,52 @@ public class HidExample {
     private void testBatchCommands() {
         System.out.println("执行批量命令测试...");
         
-        // 清空控制台
-        System.out.print("1. 清空控制台... ");
-        System.out.println(controller.clearConsole() ? "成功" : "失败");
-        
-        try { Thread.sleep(500); } catch (InterruptedException e) {}
-        
-        // 显示系统信息
-        System.out.print("2. 显示系统信息... ");
-        System.out.println(controller.showSystemInfo() ? "成功" : "失败");
-        
-        try { Thread.sleep(500); } catch (InterruptedException e) {}
-        
-        // 设置LED为红色
-        System.out.print("3. 设置LED为红色... ");
-        System.out.println(controller.setLedColor(255, 0, 0) ? "成功" : "失败");
-        
-        try { Thread.sleep(1000); } catch (InterruptedException e) {}
-        
-        // 设置LED为绿色
-        System.out.print("4. 设置LED为绿色... ");
-        System.out.println(controller.setLedColor(0, 255, 0) ? "成功" : "失败");
+        CommandScript script = CommandScript.parse("批量命令测试", Arrays.asList(
+            "0    clear",
+            "500  info",
+            "1000 led 255 0 0",
+            "2000 led 0 255 0",
+            "3000 led 0 0 255",
+            "4000 led 0 0 0"
+        ));
+        runScript(script);
         
-        try { Thread.sleep(1000); } catch (InterruptedException e) {}
-        
-        // 设置LED为蓝色
-        System.out.print("5. 设置LED为蓝色... ");
-        System.out.println(controller.setLedColor(0, 0, 255) ? "成功" : "失败");
-        
-        try { Thread.sleep(1000); } catch (InterruptedException e) {}
+        System.out.println("批量命令测试完成");
+    }
+    
+    /**
+     * 从文件加载并运行命令脚本
+     */
+    private void runScriptFile(Scanner scanner) {
+        System.out.print("请输入脚本文件路径: ");
+        String path = scanner.nextLine().trim();
         
-        // 关闭LED
-        System.out.print("6. 关闭LED... ");
-        System.out.println(controller.setLedColor(0, 0, 0) ? "成功" : "失败");
+        try {
+            CommandScript script = CommandScript.load(Paths.get(path));
+            System.out.printf("已加载脚本 %s: %d 条命令, 时长 %d ms%n",
+                script.getName(), script.getEntries().size(), script.getDurationMs());
+            runScript(script);
+        } catch (IOException e) {
+            System.out.println("读取脚本失败: " + e.getMessage());
+        } catch (IllegalArgumentException e) {
+            System.out.println("脚本格式错误: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * 运行脚本并等待完成
+     */
+    private void runScript(CommandScript script) {
+        if (timeline == null) {
+            timeline = new TimelineScheduler(controller);
+        }
         
-        System.out.println("批量命令测试完成");
+        TimelineScheduler.ScriptRun run = timeline.submit(script);
+        try {
+            run.getCompletion().join();
+        } finally {
+            System.out.println(run.report());
+        }
     }
     
     /**
@@ -340,15 +405,12 @@ public class HidExample {
     private void cleanup() {
         System.out.println("\n正在关闭程序...");
         
-        if (scheduler != null && !scheduler.isShutdown()) {
-            scheduler.shutdown();
-            try {
-                if (!scheduler.awaitTermination(2, TimeUnit.SECONDS)) {
-                    scheduler.shutdownNow();
-                }
-            } catch (InterruptedException e) {
-                scheduler.shutdownNow();
-            }
+        if (poller != null) {
+            poller.stop();
+        }
+        
+        if (timeline != null) {
+            timeline.shutdown();
         }
         
         if (controller != null) {
@@ -0,0 +1,55 @@
+package github.nooblong;
+
+/**
+ * HID报告传输通道
+ * 屏蔽设备打开方式的差异，HidController只通过该接口收发报告
+ */
+public interface HidTransport {
+
+    /**
+     * 发送输出报告
+     * @param data 报告数据 (不含报告ID)
+     * @param length 数据长度
+     * @param reportId 报告ID
+     * @return 写入的字节数，失败返回负数
+     */
+    int write(byte[] data, int length, byte reportId);
+
+    /**
+     * 读取输入报告
+     * @param buffer 接收缓冲区
+     * @param timeoutMs 超时时间(毫秒)
+     * @return 读取的字节数，超时返回0，失败返回负数
+     */
+    int read(byte[] buffer, int timeoutMs);
+
+    /**
+     * 通道是否打开
+     */
+    boolean isOpen();
+
+    /**
+     * 关闭通道
+     */
+    void close();
+
+    /**
+     * 设备路径
+     */
+    String getPath();
+
+    /**
+     * 设备序列号，可能为null
+     */
+    String getSerialNumber();
+
+    /**
+     * 产品名称
+     */
+    String getProduct();
+
+    /**
+     * 制造商
+     */
+    String getManufacturer();
+}
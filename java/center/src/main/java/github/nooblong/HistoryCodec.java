@@ -0,0 +1,149 @@
+package github.nooblong;
+
+import java.util.List;
+
+/**
+ * 历史数据报告编解码
+ *
+ * 报告格式:
+ *   [0] GET_HISTORY 命令字节
+ *   [1] 标志位: bit0 后面还有报告, bit1 设备环形缓冲区已覆盖请求起点之后的数据
+ *   [2] 本报告中的记录数
+ *   [3..] 记录，全部使用varint编码:
+ *         第一条: 序号, 设备时间ms, 温度x10 (zigzag), 湿度x10 (zigzag)
+ *         后续:   序号差, 时间差, 温度差 (zigzag), 湿度差 (zigzag)
+ *
+ * 相邻采样的差值通常只占1字节，一个64字节报告可容纳约15条记录
+ */
+public final class HistoryCodec {
+
+    public static final int FLAG_MORE = 0x01;
+    public static final int FLAG_OVERFLOW = 0x02;
+
+    private static final int HEADER_SIZE = 3;
+
+    private HistoryCodec() {
+    }
+
+    /**
+     * 解码一个历史数据报告
+     * @param report 报告数据
+     * @param out 解码出的采样追加到该列表
+     * @return 标志位
+     * @throws IllegalArgumentException 报告格式无效时抛出
+     */
+    public static int decode(byte[] report, List<HistorySample> out) {
+        if (report.length < HEADER_SIZE || report[0] != HidController.Commands.GET_HISTORY) {
+            throw new IllegalArgumentException("不是历史数据报告");
+        }
+        int flags = report[1] & 0xFF;
+        int count = report[2] & 0xFF;
+
+        int[] pos = {HEADER_SIZE};
+        long sequence = 0;
+        long time = 0;
+        long temperature = 0;
+        long humidity = 0;
+        for (int i = 0; i < count; i++) {
+            if (i == 0) {
+                sequence = readVarint(report, pos);
+                time = readVarint(report, pos);
+                temperature = zigzagDecode(readVarint(report, pos));
+                humidity = zigzagDecode(readVarint(report, pos));
+            } else {
+                sequence += readVarint(report, pos);
+                time += readVarint(report, pos);
+                temperature += zigzagDecode(readVarint(report, pos));
+                humidity += zigzagDecode(readVarint(report, pos));
+            }
+            out.add(new HistorySample(sequence, time, temperature / 10f, humidity / 10f));
+        }
+        return flags;
+    }
+
+    /**
+     * 将采样编码到一个报告中，尽可能多地放入记录
+     * @param samples 按序号排列的采样
+     * @param start 起始下标
+     * @param report 报告缓冲区，长度即报告大小
+     * @param overflow 是否设置溢出标志
+     * @return 写入的记录数，还有剩余采样时至少为1
+     * @throws IllegalArgumentException 报告太小，连一条记录都放不下时抛出 (否则分页请求会一直停在同一页)
+     */
+    public static int encode(List<HistorySample> samples, int start, byte[] report, boolean overflow) {
+        if (report.length < HEADER_SIZE) {
+            throw new IllegalArgumentException("报告太小: " + report.length + " 字节");
+        }
+        byte[] record = new byte[40];
+        int pos = HEADER_SIZE;
+        int count = 0;
+        HistorySample previous = null;
+
+        for (int i = start; i < samples.size() && count < 255; i++) {
+            HistorySample sample = samples.get(i);
+            long temperature = Math.round(sample.getTemperature() * 10.0);
+            long humidity = Math.round(sample.getHumidity() * 10.0);
+            int length;
+            if (previous == null) {
+                length = writeVarint(record, 0, sample.getSequence());
+                length = writeVarint(record, length, sample.getDeviceTimeMs());
+                length = writeVarint(record, length, zigzagEncode(temperature));
+                length = writeVarint(record, length, zigzagEncode(humidity));
+            } else {
+                length = writeVarint(record, 0, sample.getSequence() - previous.getSequence());
+                length = writeVarint(record, length, sample.getDeviceTimeMs() - previous.getDeviceTimeMs());
+                length = writeVarint(record, length, zigzagEncode(temperature - Math.round(previous.getTemperature() * 10.0)));
+                length = writeVarint(record, length, zigzagEncode(humidity - Math.round(previous.getHumidity() * 10.0)));
+            }
+            if (pos + length > report.length) {
+                break;
+            }
+            System.arraycopy(record, 0, report, pos, length);
+            pos += length;
+            count++;
+            previous = sample;
+        }
+
+        if (count == 0 && start < samples.size()) {
+            throw new IllegalArgumentException(String.format("报告太小 (%d 字节)，无法放入序号 %d 的记录",
+                report.length, samples.get(start).getSequence()));
+        }
+
+        report[0] = HidController.Commands.GET_HISTORY;
+        report[1] = (byte) ((start + count < samples.size() ? FLAG_MORE : 0) | (overflow ? FLAG_OVERFLOW : 0));
+        report[2] = (byte) count;
+        return count;
+    }
+
+    static long readVarint(byte[] data, int[] pos) {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            if (pos[0] >= data.length) {
+                throw new IllegalArgumentException("varint超出报告长度");
+            }
+            byte b = data[pos[0]++];
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new IllegalArgumentException("varint过长");
+    }
+
+    static int writeVarint(byte[] data, int pos, long value) {
+        while ((value & ~0x7FL) != 0) {
+            data[pos++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        data[pos++] = (byte) value;
+        return pos;
+    }
+
+    static long zigzagEncode(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    static long zigzagDecode(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
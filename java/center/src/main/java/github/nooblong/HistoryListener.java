@@ -0,0 +1,13 @@
+package github.nooblong;
+
+/**
+ * 历史数据监听器
+ * 下载的采样按序号从小到大依次通知
+ */
+public interface HistoryListener {
+
+    /**
+     * 收到一条历史采样
+     */
+    void onSample(HistorySample sample);
+}
@@ -0,0 +1,53 @@
+package github.nooblong;
+
+/**
+ * 设备缓存的历史采样
+ */
+public class HistorySample {
+
+    private final long sequence;
+    private final long deviceTimeMs;
+    private final float temperature;
+    private final float humidity;
+
+    /**
+     * @param sequence 设备端递增的采样序号
+     * @param deviceTimeMs 采样时的设备时间 (设备启动后的毫秒数)
+     * @param temperature 温度 (°C)
+     * @param humidity 湿度 (%)
+     */
+    public HistorySample(long sequence, long deviceTimeMs, float temperature, float humidity) {
+        this.sequence = sequence;
+        this.deviceTimeMs = deviceTimeMs;
+        this.temperature = temperature;
+        this.humidity = humidity;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public long getDeviceTimeMs() {
+        return deviceTimeMs;
+    }
+
+    public float getTemperature() {
+        return temperature;
+    }
+
+    public float getHumidity() {
+        return humidity;
+    }
+
+    /**
+     * 获取指定传感器的值
+     */
+    public float getValue(SensorType sensor) {
+        return sensor == SensorType.TEMPERATURE ? temperature : humidity;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("#%d @%d ms 温度: %.1f°C, 湿度: %.1f%%", sequence, deviceTimeMs, temperature, humidity);
+    }
+}
@@ -0,0 +1,119 @@
+package github.nooblong;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 历史数据同步
+ * 设备在环形缓冲区中保存带时间戳的采样，重新连接后批量下载断开期间的数据，
+ * 按序号顺序推送给监听器，并保留最近的采样供查询
+ */
+public class HistorySync {
+
+    private final HidController controller;
+    private final DeviceCache deviceCache;
+    private final int vendorId;
+    private final int productId;
+    private final int bufferSize;
+    private final ArrayDeque<HistorySample> recent = new ArrayDeque<>();
+    private final List<HistoryListener> listeners = new CopyOnWriteArrayList<>();
+    private volatile long lastSequence;
+    private volatile CompletableFuture<Integer> running;
+
+    /**
+     * @param controller 控制器
+     * @param deviceCache 设备缓存，用于跨重启记录已下载的序号，可为null
+     * @param vendorId 供应商ID
+     * @param productId 产品ID
+     * @param bufferSize 保留的最近采样数
+     */
+    public HistorySync(HidController controller, DeviceCache deviceCache, int vendorId, int productId, int bufferSize) {
+        this.controller = controller;
+        this.deviceCache = deviceCache;
+        this.vendorId = vendorId;
+        this.productId = productId;
+        this.bufferSize = Math.max(1, bufferSize);
+        this.lastSequence = deviceCache != null ? deviceCache.loadHistorySequence(vendorId, productId) : -1;
+    }
+
+    public void addListener(HistoryListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(HistoryListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * 下载上次同步之后的历史数据，已有下载进行中时返回该下载
+     * @return 新增的采样数
+     */
+    public synchronized CompletableFuture<Integer> download() {
+        if (running != null && !running.isDone()) {
+            return running;
+        }
+        long from = lastSequence + 1;
+        int[] delivered = {0};
+        boolean[] first = {true};
+
+        running = controller.downloadHistory(from, sample -> {
+            if (first[0]) {
+                first[0] = false;
+                if (sample.getSequence() < from) {
+                    // 设备重启后序号从头开始
+                    System.out.println("设备历史序号已重置，重新同步");
+                    lastSequence = -1;
+                }
+            }
+            if (sample.getSequence() <= lastSequence) {
+                return;
+            }
+            deliver(sample);
+            delivered[0]++;
+        }).thenApply(reports -> {
+            if (delivered[0] > 0) {
+                System.out.printf("历史数据同步完成: %d 条采样, %d 个报告%n", delivered[0], reports);
+                if (deviceCache != null) {
+                    deviceCache.saveHistorySequence(vendorId, productId, lastSequence);
+                }
+            }
+            return delivered[0];
+        });
+        return running;
+    }
+
+    private void deliver(HistorySample sample) {
+        lastSequence = sample.getSequence();
+        synchronized (recent) {
+            if (recent.size() == bufferSize) {
+                recent.pollFirst();
+            }
+            recent.addLast(sample);
+        }
+        for (HistoryListener listener : listeners) {
+            listener.onSample(sample);
+        }
+    }
+
+    /**
+     * 获取最近的采样
+     * @param limit 最多返回的条数
+     * @return 按序号从小到大排列的采样
+     */
+    public List<HistorySample> getRecent(int limit) {
+        synchronized (recent) {
+            List<HistorySample> all = new ArrayList<>(recent);
+            return new ArrayList<>(all.subList(Math.max(0, all.size() - limit), all.size()));
+        }
+    }
+
+    /**
+     * 已同步的最后一条采样序号，未同步时为-1
+     */
+    public long getLastSequence() {
+        return lastSequence;
+    }
+}
@@ -0,0 +1,49 @@
+package github.nooblong;
+
+/**
+ * 从设备收到的输入报告
+ * 附带主机接收时间和经时钟同步换算后的设备时间
+ */
+public class InboundReport {
+
+    private final byte[] data;
+    private final byte reportId;
+    private final long hostReceiveNanos;
+    private final long deviceTimeUs;
+
+    /**
+     * @param data 报告数据 (不含报告ID)
+     * @param reportId 报告ID，未使用编号报告时为0
+     * @param hostReceiveNanos 主机接收时间 (System.nanoTime)
+     * @param deviceTimeUs 报告离开设备时的设备时间(微秒)，时钟未同步时为-1
+     */
+    public InboundReport(byte[] data, byte reportId, long hostReceiveNanos, long deviceTimeUs) {
+        this.data = data;
+        this.reportId = reportId;
+        this.hostReceiveNanos = hostReceiveNanos;
+        this.deviceTimeUs = deviceTimeUs;
+    }
+
+    public byte[] getData() {
+        return data;
+    }
+
+    public byte getReportId() {
+        return reportId;
+    }
+
+    public long getHostReceiveNanos() {
+        return hostReceiveNanos;
+    }
+
+    public long getDeviceTimeUs() {
+        return deviceTimeUs;
+    }
+
+    /**
+     * 是否带有设备时间
+     */
+    public boolean hasDeviceTime() {
+        return deviceTimeUs >= 0;
+    }
+}
@@ -0,0 +1,123 @@
+package github.nooblong;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 延迟统计
+ * 使用对数分桶直方图记录纳秒级延迟，线程安全且记录时不分配内存
+ * 每个2的幂区间再细分为16个子桶，百分位误差约6%
+ */
+public class LatencyRecorder {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * 记录一次延迟
+     * @param nanos 延迟(纳秒)，负值按0记录
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        buckets.incrementAndGet(bucketIndex(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+        max.accumulateAndGet(value, Math::max);
+    }
+
+    /**
+     * 清空所有记录
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets.set(i, 0);
+        }
+        count.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+
+    /**
+     * 记录次数
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * 平均延迟(纳秒)
+     */
+    public long getMeanNanos() {
+        long n = count.get();
+        return n == 0 ? 0 : sum.get() / n;
+    }
+
+    /**
+     * 最大延迟(纳秒)
+     */
+    public long getMaxNanos() {
+        return max.get();
+    }
+
+    /**
+     * 获取百分位延迟
+     * @param percentile 百分位 (0-100)
+     * @return 延迟(纳秒)，取所在分桶的上界
+     */
+    public long getPercentileNanos(double percentile) {
+        long total = count.get();
+        if (total == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(total * percentile / 100.0));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += buckets.get(i);
+            if (seen >= target) {
+                return Math.min(bucketUpperBound(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * 生成统计摘要 (毫秒)
+     */
+    public String summary() {
+        return String.format("次数: %d, 平均: %.2f ms, p50: %.2f ms, p99: %.2f ms, 最大: %.2f ms",
+            getCount(),
+            toMillis(getMeanNanos()),
+            toMillis(getPercentileNanos(50)),
+            toMillis(getPercentileNanos(99)),
+            toMillis(getMaxNanos()));
+    }
+
+    static double toMillis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+
+    private static int bucketIndex(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+        return (shift + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    private static long bucketUpperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        long subBucket = index % SUB_BUCKETS;
+        return ((SUB_BUCKETS + subBucket + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,295 @@
+package github.nooblong;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 链路质量监控
+ * 空闲时按自适应间隔发送心跳，跟踪往返时间、丢包率和链路质量评分，
+ * 在用户命令开始超时之前把设备标记为降级
+ *
+ * 间隔调整: 最近有正常响应时不发心跳并逐步拉长间隔；心跳丢失时立即回到最小间隔
+ * 任何命令收到设备响应都说明链路可用: 心跳超时期间收到过其他响应时不计为丢失，
+ * 只有设备连续多次完全没有响应时才判定为断开。
+ * 心跳因IO线程被其他命令 (如卡住的传感器读取) 占用而过期未发送时，如果上一次检测以来设备没有任何响应，
+ * 同样计为丢失，否则IO线程卡死的链路永远不会被判定为降级
+ */
+public class LinkMonitor {
+
+    /**
+     * 链路状态
+     */
+    public enum State {
+        HEALTHY("正常"),
+        DEGRADED("降级"),
+        DOWN("断开");
+
+        private final String displayName;
+
+        State(String displayName) {
+            this.displayName = displayName;
+        }
+
+        public String getDisplayName() {
+            return displayName;
+        }
+    }
+
+    /**
+     * 链路状态变化监听器
+     */
+    public interface Listener {
+        void onStateChanged(State previous, State current, LinkMonitor monitor);
+    }
+
+    // 连续丢失多少次心跳判定为断开
+    private static final int DOWN_AFTER_LOSSES = 3;
+    // 丢包率的平滑系数
+    private static final double LOSS_ALPHA = 0.2;
+    // 往返时间低于该值不扣分
+    private static final double GOOD_RTT_MS = 20;
+
+    private final HidController controller;
+    private final long minIntervalMs;
+    private final long maxIntervalMs;
+    private final int timeoutMs;
+    private final int degradedQuality;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private ScheduledExecutorService executor;
+
+    private long intervalMs;
+    private int sequence = 0;
+    private volatile double srttMs = Double.NaN;
+    private volatile double rttVarMs = 0;
+    private volatile double lossRate = 0;
+    private volatile int consecutiveLosses = 0;
+    private volatile long sent = 0;
+    private volatile long lost = 0;
+    private volatile State state = State.HEALTHY;
+    // 上一次检测时看到的最近响应时间，用于判断期间是否收到过响应
+    private long lastSeenResponseNanos = 0;
+
+    /**
+     * @param controller 被监控的控制器
+     * @param minIntervalMs 最小心跳间隔
+     * @param maxIntervalMs 最大心跳间隔
+     * @param timeoutMs 心跳超时时间
+     * @param degradedQuality 质量评分低于该值时判定为降级 (0-100)
+     */
+    public LinkMonitor(HidController controller, long minIntervalMs, long maxIntervalMs, int timeoutMs, int degradedQuality) {
+        this.controller = controller;
+        this.minIntervalMs = Math.max(1, minIntervalMs);
+        this.maxIntervalMs = Math.max(this.minIntervalMs, maxIntervalMs);
+        this.timeoutMs = timeoutMs;
+        this.degradedQuality = degradedQuality;
+        this.intervalMs = this.minIntervalMs;
+    }
+
+    /**
+     * 启动监控
+     */
+    public synchronized void start() {
+        if (executor != null) {
+            return;
+        }
+        executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "link-monitor");
+            t.setDaemon(true);
+            return t;
+        });
+        executor.schedule(this::tick, minIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 停止监控
+     */
+    public synchronized void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    private void tick() {
+        try {
+            long lastResponse = controller.getLastResponseNanos();
+            boolean respondedSinceLastTick = lastResponse != lastSeenResponseNanos;
+            lastSeenResponseNanos = lastResponse;
+            long idleMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lastResponse);
+            if (lastResponse != 0 && idleMs < intervalMs) {
+                // 近期有正常响应，说明链路可用
+                onTraffic();
+            }
+            if (lastResponse != 0 && idleMs < intervalMs && state == State.HEALTHY) {
+                // 不必额外发心跳
+                intervalMs = Math.min(maxIntervalMs, intervalMs * 2);
+            } else {
+                heartbeat(respondedSinceLastTick);
+            }
+        } catch (Exception e) {
+            System.err.println("心跳检测出错: " + e.getMessage());
+        } finally {
+            reschedule();
+        }
+    }
+
+    private synchronized void reschedule() {
+        if (executor != null) {
+            executor.schedule(this::tick, intervalMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * @param respondedSinceLastTick 上一次检测以来设备是否有过响应
+     */
+    private void heartbeat(boolean respondedSinceLastTick) {
+        sequence = (sequence + 1) & 0xFFFF;
+        long sentNanos = System.nanoTime();
+        long rttNanos = controller.ping(sequence, timeoutMs);
+        long lastResponse = controller.getLastResponseNanos();
+        if (rttNanos == HidController.PING_SKIPPED && (respondedSinceLastTick || lastResponse - sentNanos > 0)) {
+            // 设备忙于其他命令但仍有响应，心跳未发送，不计入丢包
+            return;
+        }
+        if (rttNanos < 0 && rttNanos != HidController.PING_SKIPPED && lastResponse - sentNanos > 0) {
+            // 心跳没有回复，但设备回复了其他报告，链路仍然可用 (固件可能不支持心跳)
+            onTraffic();
+            return;
+        }
+
+        sent++;
+        if (rttNanos >= 0) {
+            onReply(rttNanos / 1_000_000.0);
+            intervalMs = Math.min(maxIntervalMs, intervalMs + minIntervalMs);
+        } else {
+            onLoss();
+            intervalMs = minIntervalMs;
+        }
+        updateState();
+    }
+
+    private void onReply(double rttMs) {
+        if (Double.isNaN(srttMs)) {
+            srttMs = rttMs;
+            rttVarMs = rttMs / 2;
+        } else {
+            rttVarMs = 0.75 * rttVarMs + 0.25 * Math.abs(srttMs - rttMs);
+            srttMs = 0.875 * srttMs + 0.125 * rttMs;
+        }
+        lossRate = (1 - LOSS_ALPHA) * lossRate;
+        consecutiveLosses = 0;
+    }
+
+    /**
+     * 收到心跳以外的设备响应，清除连续丢失计数
+     */
+    private void onTraffic() {
+        if (consecutiveLosses > 0) {
+            consecutiveLosses = 0;
+            updateState();
+        }
+    }
+
+    /**
+     * 重新连接后清除连续丢失计数，由之后的心跳和响应重新判断链路状态
+     */
+    public void reset() {
+        consecutiveLosses = 0;
+        updateState();
+    }
+
+    private void onLoss() {
+        lost++;
+        lossRate = (1 - LOSS_ALPHA) * lossRate + LOSS_ALPHA;
+        consecutiveLosses++;
+    }
+
+    private void updateState() {
+        State next;
+        if (consecutiveLosses >= DOWN_AFTER_LOSSES) {
+            next = State.DOWN;
+        } else if (getQuality() < degradedQuality || getRttBoundMs() > timeoutMs / 2.0) {
+            // 往返时间上界逼近超时，命令很快会开始超时
+            next = State.DEGRADED;
+        } else {
+            next = State.HEALTHY;
+        }
+
+        State previous = state;
+        if (next != previous) {
+            state = next;
+            System.out.printf("链路状态: %s -> %s (%s)%n", previous.getDisplayName(), next.getDisplayName(), summary());
+            for (Listener listener : listeners) {
+                listener.onStateChanged(previous, next, this);
+            }
+        }
+    }
+
+    /**
+     * 链路质量评分 (0-100)
+     * 由丢包率和平滑往返时间计算，往返时间接近超时的链路最多扣一半分
+     */
+    public int getQuality() {
+        double rtt = Double.isNaN(srttMs) ? 0 : srttMs;
+        double rttFactor = rtt <= GOOD_RTT_MS
+            ? 1
+            : Math.max(0, 1 - (rtt - GOOD_RTT_MS) / Math.max(1, timeoutMs - GOOD_RTT_MS));
+        return (int) Math.round(100 * (1 - lossRate) * (0.5 + 0.5 * rttFactor));
+    }
+
+    /**
+     * 往返时间上界 (SRTT + 4 * RTTVAR)
+     */
+    public double getRttBoundMs() {
+        return Double.isNaN(srttMs) ? 0 : srttMs + 4 * rttVarMs;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * 链路是否降级或断开
+     */
+    public boolean isDegraded() {
+        return state != State.HEALTHY;
+    }
+
+    /**
+     * 平滑往返时间(毫秒)，尚无样本时为NaN
+     */
+    public double getSmoothedRttMs() {
+        return srttMs;
+    }
+
+    public double getLossRate() {
+        return lossRate;
+    }
+
+    public long getHeartbeatsSent() {
+        return sent;
+    }
+
+    public long getHeartbeatsLost() {
+        return lost;
+    }
+
+    /**
+     * 生成链路摘要
+     */
+    public String summary() {
+        return String.format("质量 %d, RTT %.1f ms, 丢包率 %.1f%%, 心跳 %d/%d 丢失",
+            getQuality(), Double.isNaN(srttMs) ? 0 : srttMs, lossRate * 100, lost, sent);
+    }
+}
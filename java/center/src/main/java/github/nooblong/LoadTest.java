@@ -0,0 +1,535 @@
+package github.nooblong;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 压力测试
+ * 按配置的比例混合发送LED、传感器读取和鼠标命令，统计吞吐量、延迟分布和超时
+ *
+ * 两种发送方式:
+ *   闭环 (默认): 每个并发各自按计划节拍发送，等上一个请求完成后再发下一个；rate为0时不限速
+ *   开环: 单个发送线程按计划时间发送，不等待请求完成
+ *
+ * 延迟同时按两种起点统计: "服务延迟" 从实际发送开始，"修正延迟" 从计划发送时间开始。
+ * 设备卡顿时闭环发送会推迟后续请求 (协调遗漏)，只看服务延迟会低估尾延迟，修正延迟把推迟的时间也计算在内。
+ * 超时 (包括在调度队列中过期) 的请求单独计数，同时按实际等待时间 (至少为超时时间) 计入修正延迟和各命令的延迟分布，
+ * 不计入服务延迟；失败的请求只计数，不计入任何延迟分布。
+ */
+public class LoadTest {
+
+    /**
+     * 压测中的命令类型
+     */
+    public enum Operation {
+        LED("led"),
+        TEMPERATURE("temperature"),
+        HUMIDITY("humidity"),
+        CLICK("click");
+
+        private final String key;
+
+        Operation(String key) {
+            this.key = key;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public static Operation fromKey(String key) {
+            for (Operation operation : values()) {
+                if (operation.key.equalsIgnoreCase(key)) {
+                    return operation;
+                }
+            }
+            throw new IllegalArgumentException("未知命令类型: " + key);
+        }
+    }
+
+    /**
+     * 压测参数，默认值来自配置文件，可被命令行参数覆盖
+     */
+    public static class Options {
+        // 最高速率，发送间隔至少为1纳秒
+        private static final int MAX_RATE = 1_000_000_000;
+
+        private int rate;
+        private int durationSeconds;
+        private int concurrency;
+        private boolean openLoop;
+        private int timeoutMs;
+        private Map<Operation, Integer> mix;
+        private boolean simulated;
+        private String jsonOutput;
+
+        /**
+         * 解析压测参数
+         * 支持 --rate=N --duration=N --concurrency=N --timeout=N --mix=led:4,click:1
+         * --open-loop --simulate --json=文件 (--json=- 输出到标准输出)
+         * @throws IllegalArgumentException 参数无效时抛出
+         */
+        public static Options parse(DeviceConfig config, String[] args) {
+            Options options = new Options();
+            options.rate = config.getLoadTestRate();
+            options.durationSeconds = config.getLoadTestDurationSeconds();
+            options.concurrency = config.getLoadTestConcurrency();
+            options.openLoop = config.isLoadTestOpenLoop();
+            options.timeoutMs = config.getLoadTestTimeoutMs();
+            String mix = config.getLoadTestMix();
+            options.simulated = config.isLoadTestSimulated();
+
+            for (String arg : args) {
+                if ("--load-test".equals(arg)) {
+                    continue;
+                }
+                String[] parts = arg.split("=", 2);
+                String value = parts.length > 1 ? parts[1] : null;
+                switch (parts[0]) {
+                    case "--rate":
+                        options.rate = parseInt(arg, value);
+                        break;
+                    case "--duration":
+                        options.durationSeconds = parseInt(arg, value);
+                        break;
+                    case "--concurrency":
+                        options.concurrency = parseInt(arg, value);
+                        break;
+                    case "--timeout":
+                        options.timeoutMs = parseInt(arg, value);
+                        break;
+                    case "--mix":
+                        mix = value;
+                        break;
+                    case "--open-loop":
+                        options.openLoop = true;
+                        break;
+                    case "--simulate":
+                        options.simulated = true;
+                        break;
+                    case "--json":
+                        options.jsonOutput = value != null ? value : "-";
+                        break;
+                    default:
+                        throw new IllegalArgumentException("未知参数: " + arg);
+                }
+            }
+
+            if (options.rate < 0 || options.durationSeconds < 1 || options.concurrency < 1 || options.timeoutMs < 1) {
+                throw new IllegalArgumentException("速率不能为负数，时长、并发数和超时必须大于0");
+            }
+            if (options.rate > MAX_RATE) {
+                // 发送间隔以纳秒计，速率过高时间隔为0
+                throw new IllegalArgumentException("速率不能超过 " + MAX_RATE + " 次/秒");
+            }
+            if (options.openLoop && options.rate == 0) {
+                throw new IllegalArgumentException("开环模式需要指定速率");
+            }
+            options.mix = parseMix(mix);
+            return options;
+        }
+
+        /**
+         * 解析命令混合比例
+         * @param text 格式 "led:4,temperature:3"，省略权重时为1
+         */
+        static Map<Operation, Integer> parseMix(String text) {
+            Map<Operation, Integer> mix = new EnumMap<>(Operation.class);
+            if (text != null) {
+                for (String item : text.split(",")) {
+                    if (item.trim().isEmpty()) {
+                        continue;
+                    }
+                    String[] parts = item.trim().split(":");
+                    int weight = parts.length > 1 ? parseInt(item, parts[1]) : 1;
+                    if (weight < 0) {
+                        throw new IllegalArgumentException("权重不能为负数: " + item);
+                    }
+                    if (weight > 0) {
+                        mix.merge(Operation.fromKey(parts[0].trim()), weight, Integer::sum);
+                    }
+                }
+            }
+            if (mix.isEmpty()) {
+                throw new IllegalArgumentException("命令混合比例为空");
+            }
+            return mix;
+        }
+
+        private static int parseInt(String arg, String value) {
+            try {
+                return Integer.parseInt(value != null ? value.trim() : "");
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("无效的数字: " + arg);
+            }
+        }
+
+        public int getRate() {
+            return rate;
+        }
+
+        public int getDurationSeconds() {
+            return durationSeconds;
+        }
+
+        public int getConcurrency() {
+            return concurrency;
+        }
+
+        public boolean isOpenLoop() {
+            return openLoop;
+        }
+
+        public int getTimeoutMs() {
+            return timeoutMs;
+        }
+
+        public Map<Operation, Integer> getMix() {
+            return mix;
+        }
+
+        public boolean isSimulated() {
+            return simulated;
+        }
+
+        /**
+         * JSON结果输出位置，"-" 表示标准输出，null表示不输出
+         */
+        public String getJsonOutput() {
+            return jsonOutput;
+        }
+    }
+
+    private final HidController controller;
+    private final Options options;
+    private final Operation[] sequence;
+    private final LatencyRecorder serviceLatency = new LatencyRecorder();
+    private final LatencyRecorder correctedLatency = new LatencyRecorder();
+    private final Map<Operation, LatencyRecorder> operationLatency = new EnumMap<>(Operation.class);
+    private final Map<Operation, AtomicLong> operationTimeouts = new EnumMap<>(Operation.class);
+    private final AtomicLong issued = new AtomicLong();
+    private final AtomicLong succeeded = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong timedOut = new AtomicLong();
+    private final AtomicInteger outstanding = new AtomicInteger();
+    private long plannedRequests;
+    private long elapsedNanos;
+
+    public LoadTest(HidController controller, Options options) {
+        this.controller = controller;
+        this.options = options;
+        this.sequence = buildSequence(options.getMix());
+        for (Operation operation : Operation.values()) {
+            operationLatency.put(operation, new LatencyRecorder());
+            operationTimeouts.put(operation, new AtomicLong());
+        }
+    }
+
+    /**
+     * 按权重生成均匀交错的命令序列 (平滑加权轮询)，避免同类命令成批出现
+     */
+    private static Operation[] buildSequence(Map<Operation, Integer> mix) {
+        int total = mix.values().stream().mapToInt(Integer::intValue).sum();
+        Map<Operation, Integer> current = new EnumMap<>(Operation.class);
+        Operation[] result = new Operation[total];
+        for (int i = 0; i < total; i++) {
+            Operation best = null;
+            for (Map.Entry<Operation, Integer> entry : mix.entrySet()) {
+                int value = current.merge(entry.getKey(), entry.getValue(), Integer::sum);
+                if (best == null || value > current.get(best)) {
+                    best = entry.getKey();
+                }
+            }
+            current.merge(best, -total, Integer::sum);
+            result[i] = best;
+        }
+        return result;
+    }
+
+    /**
+     * 运行压测，阻塞直到结束
+     */
+    public void run() throws InterruptedException {
+        System.out.printf("开始压力测试: %s, %s, %d 秒, 混合 %s%n",
+            options.getRate() > 0 ? options.getRate() + " 次/秒" : "不限速",
+            options.isOpenLoop() ? "开环" : "闭环 " + options.getConcurrency() + " 并发",
+            options.getDurationSeconds(), describeMix(options.getMix()));
+
+        long start = System.nanoTime();
+        long end = start + TimeUnit.SECONDS.toNanos(options.getDurationSeconds());
+        plannedRequests = (long) options.getRate() * options.getDurationSeconds();
+
+        if (options.isOpenLoop()) {
+            runOpenLoop(start, end);
+        } else {
+            List<Thread> workers = new ArrayList<>();
+            for (int i = 0; i < options.getConcurrency(); i++) {
+                int index = i;
+                Thread worker = new Thread(() -> runClosedLoop(index, start, end), "load-" + i);
+                worker.setDaemon(true);
+                workers.add(worker);
+                worker.start();
+            }
+            for (Thread worker : workers) {
+                worker.join();
+            }
+        }
+        elapsedNanos = System.nanoTime() - start;
+    }
+
+    private static String describeMix(Map<Operation, Integer> mix) {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<Operation, Integer> entry : mix.entrySet()) {
+            if (sb.length() > 0) {
+                sb.append(',');
+            }
+            sb.append(entry.getKey().getKey()).append(':').append(entry.getValue());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 开环发送: 按计划时间发送，请求完成后在回调中记录
+     */
+    private void runOpenLoop(long start, long end) throws InterruptedException {
+        long interval = TimeUnit.SECONDS.toNanos(1) / options.getRate();
+        for (long i = 0; ; i++) {
+            long intended = start + i * interval;
+            if (intended - end >= 0) {
+                break;
+            }
+            parkUntil(intended);
+            long sent = System.nanoTime();
+            Operation operation = sequence[(int) (i % sequence.length)];
+            outstanding.incrementAndGet();
+            submit(operation, i)
+                .orTimeout(options.getTimeoutMs(), TimeUnit.MILLISECONDS)
+                .whenComplete((ok, error) -> {
+                    record(operation, intended, sent, System.nanoTime(), ok, error);
+                    outstanding.decrementAndGet();
+                });
+        }
+
+        // 等待剩余请求完成或超时
+        long drainDeadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(options.getTimeoutMs() * 2L);
+        while (outstanding.get() > 0 && System.nanoTime() - drainDeadline < 0) {
+            Thread.sleep(1);
+        }
+    }
+
+    /**
+     * 闭环发送: 每个并发按自己的节拍发送，落后时立即发送下一个，修正延迟从计划时间算起
+     */
+    private void runClosedLoop(int index, long start, long end) {
+        int concurrency = options.getConcurrency();
+        long interval = options.getRate() > 0 ? TimeUnit.SECONDS.toNanos(1) * concurrency / options.getRate() : 0;
+        long intended = start + interval * index / concurrency;
+        long count = index;
+
+        while (System.nanoTime() - end < 0 && intended - end < 0) {
+            parkUntil(intended);
+            long sent = System.nanoTime();
+            Operation operation = sequence[(int) (count % sequence.length)];
+            CompletableFuture<Boolean> future = submit(operation, count);
+            count += concurrency;
+
+            Boolean ok = null;
+            Throwable error = null;
+            try {
+                ok = future.get(options.getTimeoutMs(), TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                future.cancel(false);
+                error = e;
+            } catch (ExecutionException e) {
+                error = e.getCause();
+            } catch (CancellationException e) {
+                error = e;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            long done = System.nanoTime();
+            record(operation, intended, sent, done, ok, error);
+            intended = interval > 0 ? intended + interval : done;
+        }
+    }
+
+    /**
+     * 提交一条命令
+     * @param n 请求序号，用于生成LED颜色
+     * @return 请求是否成功
+     */
+    private CompletableFuture<Boolean> submit(Operation operation, long n) {
+        issued.incrementAndGet();
+        int timeoutMs = options.getTimeoutMs();
+        switch (operation) {
+            case LED:
+                byte[] color = {0, 0, 0};
+                color[(int) (n % 3)] = (byte) 255;
+                return controller.submitCommand(CommandPriority.defaultFor(HidController.Commands.SET_LED_COLOR),
+                    timeoutMs, HidController.Commands.SET_LED_COLOR, color);
+            case CLICK:
+                return controller.submitCommand(CommandPriority.defaultFor(HidController.Commands.MOUSE_CLICK),
+                    timeoutMs, HidController.Commands.MOUSE_CLICK);
+            default:
+                byte command = operation == Operation.TEMPERATURE
+                    ? HidController.Commands.GET_TEMPERATURE
+                    : HidController.Commands.GET_HUMIDITY;
+                return controller.submitCommandWithReport(CommandPriority.defaultFor(command), timeoutMs, command, timeoutMs)
+                    .thenApply(report -> report != null && report.getData().length >= 4);
+        }
+    }
+
+    private void record(Operation operation, long intended, long sent, long done, Boolean ok, Throwable error) {
+        if (error instanceof CompletionException && error.getCause() != null) {
+            error = error.getCause();
+        }
+        if (error instanceof TimeoutException || error instanceof CancellationException) {
+            // 等待超时，或在调度队列中超过截止时间被丢弃
+            timedOut.incrementAndGet();
+            operationTimeouts.get(operation).incrementAndGet();
+            // 客户端至少等待了超时时间，计入修正延迟，否则尾延迟会漏掉最慢的请求
+            long waited = Math.max(done - intended, TimeUnit.MILLISECONDS.toNanos(options.getTimeoutMs()));
+            correctedLatency.record(waited);
+            operationLatency.get(operation).record(waited);
+        } else if (error != null || ok == null || !ok) {
+            failed.incrementAndGet();
+        } else {
+            succeeded.incrementAndGet();
+            serviceLatency.record(done - sent);
+            correctedLatency.record(done - intended);
+            operationLatency.get(operation).record(done - intended);
+        }
+    }
+
+    private static void parkUntil(long deadlineNanos) {
+        long remaining;
+        while ((remaining = deadlineNanos - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(remaining);
+        }
+    }
+
+    /**
+     * 实际吞吐量 (成功请求数/秒)
+     */
+    public double getThroughput() {
+        return elapsedNanos > 0 ? succeeded.get() * 1_000_000_000.0 / elapsedNanos : 0;
+    }
+
+    public long getIssued() {
+        return issued.get();
+    }
+
+    public long getSucceeded() {
+        return succeeded.get();
+    }
+
+    public long getFailed() {
+        return failed.get();
+    }
+
+    public long getTimedOut() {
+        return timedOut.get();
+    }
+
+    /**
+     * 从实际发送开始计算的延迟
+     */
+    public LatencyRecorder getServiceLatency() {
+        return serviceLatency;
+    }
+
+    /**
+     * 从计划发送时间开始计算的延迟 (协调遗漏修正)，超时的请求至少按超时时间计入
+     */
+    public LatencyRecorder getCorrectedLatency() {
+        return correctedLatency;
+    }
+
+    /**
+     * 生成文本报告
+     */
+    public String report() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("压力测试结果 (%.1f 秒)%n", elapsedNanos / 1_000_000_000.0));
+        if (plannedRequests > 0) {
+            sb.append(String.format("  目标速率: %d 次/秒, 计划 %d 次%n", options.getRate(), plannedRequests));
+        }
+        sb.append(String.format("  实际吞吐: %.1f 次/秒%n", getThroughput()));
+        sb.append(String.format("  发送 %d, 成功 %d, 失败 %d, 超时 %d%n",
+            getIssued(), getSucceeded(), getFailed(), getTimedOut()));
+        sb.append("  服务延迟 - ").append(percentiles(serviceLatency)).append(System.lineSeparator());
+        sb.append("  修正延迟 - ").append(percentiles(correctedLatency)).append(System.lineSeparator());
+        for (Operation operation : options.getMix().keySet()) {
+            sb.append(String.format("  %-12s %s, 超时 %d%n", operation.getKey(),
+                percentiles(operationLatency.get(operation)), operationTimeouts.get(operation).get()));
+        }
+        return sb.toString();
+    }
+
+    private static String percentiles(LatencyRecorder recorder) {
+        return String.format("次数: %d, p50: %.2f ms, p99: %.2f ms, p99.9: %.2f ms, 最大: %.2f ms",
+            recorder.getCount(),
+            LatencyRecorder.toMillis(recorder.getPercentileNanos(50)),
+            LatencyRecorder.toMillis(recorder.getPercentileNanos(99)),
+            LatencyRecorder.toMillis(recorder.getPercentileNanos(99.9)),
+            LatencyRecorder.toMillis(recorder.getMaxNanos()));
+    }
+
+    /**
+     * 生成JSON格式的结果，延迟单位为毫秒
+     */
+    public String toJson() {
+        StringBuilder sb = new StringBuilder("{");
+        sb.append("\"mode\":\"").append(options.isOpenLoop() ? "open-loop" : "closed-loop").append("\",");
+        sb.append("\"simulated\":").append(options.isSimulated()).append(',');
+        sb.append("\"targetRate\":").append(options.getRate()).append(',');
+        sb.append("\"concurrency\":").append(options.getConcurrency()).append(',');
+        sb.append("\"durationSeconds\":").append(String.format(Locale.ROOT, "%.3f", elapsedNanos / 1_000_000_000.0)).append(',');
+        sb.append("\"throughput\":").append(String.format(Locale.ROOT, "%.2f", getThroughput())).append(',');
+        sb.append("\"planned\":").append(plannedRequests).append(',');
+        sb.append("\"issued\":").append(getIssued()).append(',');
+        sb.append("\"succeeded\":").append(getSucceeded()).append(',');
+        sb.append("\"failed\":").append(getFailed()).append(',');
+        sb.append("\"timeouts\":").append(getTimedOut()).append(',');
+        sb.append("\"serviceLatency\":").append(latencyJson(serviceLatency)).append(',');
+        sb.append("\"correctedLatency\":").append(latencyJson(correctedLatency)).append(',');
+        sb.append("\"operations\":{");
+        boolean first = true;
+        for (Operation operation : options.getMix().keySet()) {
+            if (!first) {
+                sb.append(',');
+            }
+            first = false;
+            sb.append('"').append(operation.getKey()).append("\":{")
+                .append("\"weight\":").append(options.getMix().get(operation)).append(',')
+                .append("\"timeouts\":").append(operationTimeouts.get(operation).get()).append(',')
+                .append("\"correctedLatency\":").append(latencyJson(operationLatency.get(operation)))
+                .append('}');
+        }
+        sb.append("}}");
+        return sb.toString();
+    }
+
+    private static String latencyJson(LatencyRecorder recorder) {
+        return String.format(Locale.ROOT, "{\"count\":%d,\"mean\":%.3f,\"p50\":%.3f,\"p99\":%.3f,\"p999\":%.3f,\"max\":%.3f}",
+            recorder.getCount(),
+            LatencyRecorder.toMillis(recorder.getMeanNanos()),
+            LatencyRecorder.toMillis(recorder.getPercentileNanos(50)),
+            LatencyRecorder.toMillis(recorder.getPercentileNanos(99)),
+            LatencyRecorder.toMillis(recorder.getPercentileNanos(99.9)),
+            LatencyRecorder.toMillis(recorder.getMaxNanos()));
+    }
+}
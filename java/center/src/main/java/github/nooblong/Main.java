@@ -1,6 +1,13 @@
 package github.nooblong;
 
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
 import java.util.Scanner;
+import java.util.concurrent.CountDownLatch;
 
 /**
  * ESP32 HID通信主程序
@@ -9,6 +16,9 @@ import java.util.Scanner;
 public class Main {
     
     public static void main(String[] args) {
+        boolean daemonMode = Arrays.asList(args).contains("--daemon");
+        boolean loadTestMode = Arrays.asList(args).contains("--load-test");
+        
         System.out.println("ESP32 HID通信工具 v2.0");
         System.out.println("========================");
         
@@ -17,12 +27,27 @@ public class Main {
         config.printConfig();
         
         // 创建控制器
-        HidController controller = new HidController(config.getVendorId(), config.getProductId());
+        DeviceCache deviceCache = config.isDeviceCacheEnabled() ? new DeviceCache(config.getDeviceCacheFile()) : null;
+        HidController controller = new HidController(config.getVendorId(), config.getProductId(), deviceCache);
+        controller.configureReports(config);
+        controller.configureSensorCache(config);
+        
+        if (loadTestMode) {
+            runLoadTest(controller, config, args);
+            return;
+        }
         
         // 初始化连接
         if (!controller.initialize()) {
             System.err.println("初始化失败！");
             
+            if (daemonMode) {
+                // 服务模式下不做交互，直接列出设备后退出
+                controller.listAvailableDevices();
+                controller.close();
+                System.exit(1);
+            }
+            
             Scanner scanner = new Scanner(System.in);
             System.out.print("是否查看可用设备列表? (y/n): ");
             String response = scanner.nextLine().trim().toLowerCase();
@@ -36,8 +61,101 @@ public class Main {
             return;
         }
         
+        printStartupTime(controller);
+        controller.startLinkMonitor(config);
+        controller.startClockSync(config);
+        controller.startHistorySync(config);
+        
+        if (daemonMode) {
+            runDaemon(controller, config);
+            return;
+        }
+        
         // 启动示例程序
         HidExample example = new HidExample();
         example.runWithController(controller, config);
     }
+    
+    /**
+     * 打印启动耗时，用于跟踪启动到可发送首个命令的时间
+     */
+    private static void printStartupTime(HidController controller) {
+        long uptimeMs = ManagementFactory.getRuntimeMXBean().getUptime();
+        System.out.printf("启动耗时: %d ms (设备连接: %.1f ms, %s)%n",
+            uptimeMs,
+            controller.getConnectTimeNanos() / 1_000_000.0,
+            controller.isConnectedFromCache() ? "缓存路径" : "完整枚举");
+    }
+    
+    /**
+     * 运行压力测试后退出，不启动心跳、时钟同步等后台流量
+     */
+    private static void runLoadTest(HidController controller, DeviceConfig config, String[] args) {
+        LoadTest.Options options;
+        try {
+            options = LoadTest.Options.parse(config, args);
+        } catch (IllegalArgumentException e) {
+            System.err.println("压力测试参数无效: " + e.getMessage());
+            System.exit(2);
+            return;
+        }
+        
+        boolean connected = options.isSimulated()
+            ? controller.connect(SimulatedTransport.fromConfig(config))
+            : controller.initialize();
+        if (!connected) {
+            System.err.println("初始化失败！");
+            controller.close();
+            System.exit(1);
+        }
+        controller.setCommandLogging(false);
+        
+        LoadTest loadTest = new LoadTest(controller, options);
+        try {
+            loadTest.run();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        controller.close();
+        
+        System.out.print(loadTest.report());
+        String jsonOutput = options.getJsonOutput();
+        if ("-".equals(jsonOutput)) {
+            System.out.println(loadTest.toJson());
+        } else if (jsonOutput != null) {
+            try {
+                Files.write(Paths.get(jsonOutput), loadTest.toJson().getBytes(StandardCharsets.UTF_8));
+                System.out.println("结果已写入: " + jsonOutput);
+            } catch (IOException e) {
+                System.err.println("写入结果失败: " + e.getMessage());
+            }
+        }
+    }
+    
+    /**
+     * 以服务模式运行，直到进程被终止
+     */
+    private static void runDaemon(HidController controller, DeviceConfig config) {
+        DaemonServer server = new DaemonServer(controller, config);
+        try {
+            server.start();
+        } catch (IOException e) {
+            System.err.println("启动HTTP服务失败: " + e.getMessage());
+            controller.close();
+            System.exit(1);
+        }
+        
+        CountDownLatch stopped = new CountDownLatch(1);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.stop();
+            controller.close();
+            stopped.countDown();
+        }));
+        
+        try {
+            stopped.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
 }
\ No newline at end of file
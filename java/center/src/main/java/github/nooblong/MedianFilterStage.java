@@ -0,0 +1,66 @@
+package github.nooblong;
+
+/**
+ * 中值滤波
+ * 输出最近N个样本的中值，单个尖峰不会影响输出
+ * 窗口大小固定，每个样本只做一次有序数组的删除和插入 (O(N)，不排序整个窗口)
+ * 样本数为偶数时 (包括窗口未填满时) 输出较小的中值而不是两个中值的平均，
+ * 因此窗口未满时的单个尖峰也不会混入输出
+ */
+public class MedianFilterStage implements SensorStage {
+
+    private final double[] window;
+    private final double[] sorted;
+    private int next = 0;
+    private int size = 0;
+
+    /**
+     * @param windowSize 窗口大小，建议使用奇数
+     */
+    public MedianFilterStage(int windowSize) {
+        if (windowSize < 1) {
+            throw new IllegalArgumentException("窗口大小必须大于0: " + windowSize);
+        }
+        this.window = new double[windowSize];
+        this.sorted = new double[windowSize];
+    }
+
+    @Override
+    public double process(double value) {
+        if (size == window.length) {
+            removeSorted(window[next]);
+        } else {
+            size++;
+        }
+        window[next] = value;
+        next = (next + 1) % window.length;
+        insertSorted(value);
+
+        // 下中值: 偶数个样本时取两个中值中较小的一个
+        return sorted[(size - 1) / 2];
+    }
+
+    @Override
+    public void reset() {
+        next = 0;
+        size = 0;
+    }
+
+    private void removeSorted(double value) {
+        int i = 0;
+        while (i < size - 1 && sorted[i] != value) {
+            i++;
+        }
+        System.arraycopy(sorted, i + 1, sorted, i, size - 1 - i);
+    }
+
+    private void insertSorted(double value) {
+        // 调用前已移除旧值，有效元素为 size - 1 个
+        int i = size - 1;
+        while (i > 0 && sorted[i - 1] > value) {
+            sorted[i] = sorted[i - 1];
+            i--;
+        }
+        sorted[i] = value;
+    }
+}
@@ -0,0 +1,298 @@
+package github.nooblong;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 规则引擎
+ * 把传感器数据流转换为设备动作: 每收到一个读数，只评估该传感器的规则，规则状态变化时向控制器提交动作
+ *
+ * 规则在加载时按传感器分组编译，rising/falling 规则按时间窗口共享同一个变化量计算，
+ * 因此每个读数的评估开销只与该传感器的规则数成正比。同一读数触发的相同动作只发送一次；
+ * LED等设置状态的动作只保留最后一个，新动作提交时撤销尚未发送的同类旧动作，避免设备积压。
+ * 传感器到动作的延迟从收到传感器报告开始，到动作命令写入设备为止。
+ */
+public class RulesEngine {
+
+    // 动作在调度队列中超过该时间仍未发送则放弃，避免执行过时的动作
+    private static final long ACTION_DEADLINE_MS = 1000;
+
+    private final HidController controller;
+    private final List<SensorRule> rules;
+    private final Map<SensorType, RuleGroup> groups = new EnumMap<>(SensorType.class);
+    private final LatencyRecorder evaluationLatency = new LatencyRecorder();
+    private final LatencyRecorder actionLatency = new LatencyRecorder();
+    private final AtomicLong actionsSent = new AtomicLong();
+    private final AtomicLong actionsFailed = new AtomicLong();
+    private final AtomicLong actionsSuperseded = new AtomicLong();
+    // 每种设置状态命令最近一次提交、可能尚未发送的动作
+    private final Map<Byte, CompletableFuture<Boolean>> pendingState = new ConcurrentHashMap<>();
+
+    public RulesEngine(HidController controller, List<SensorRule> rules) {
+        this.controller = controller;
+        this.rules = Collections.unmodifiableList(new ArrayList<>(rules));
+
+        Map<SensorType, List<SensorRule>> bySensor = new EnumMap<>(SensorType.class);
+        for (SensorRule rule : rules) {
+            bySensor.computeIfAbsent(rule.getSensor(), sensor -> new ArrayList<>()).add(rule);
+        }
+        bySensor.forEach((sensor, sensorRules) -> groups.put(sensor, new RuleGroup(sensorRules)));
+    }
+
+    /**
+     * 从文件加载规则，每行一条，#开头为注释
+     * @throws IllegalArgumentException 规则无效时抛出，消息中包含行号
+     */
+    public static RulesEngine load(HidController controller, Path path) throws IOException {
+        List<String> lines = Files.readAllLines(path, StandardCharsets.UTF_8);
+        List<SensorRule> rules = new ArrayList<>();
+        Set<String> names = new HashSet<>();
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i).trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            try {
+                SensorRule rule = SensorRule.parse(line);
+                if (!names.add(rule.getName())) {
+                    throw new IllegalArgumentException("规则名称重复: " + rule.getName());
+                }
+                rules.add(rule);
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException(String.format("%s 第%d行: %s", path.getFileName(), i + 1, e.getMessage()), e);
+            }
+        }
+        return new RulesEngine(controller, rules);
+    }
+
+    /**
+     * 评估一个传感器读数
+     * @param sensor 传感器类型
+     * @param value 传感器值
+     * @param receivedNanos 主机收到读数的时间 (System.nanoTime)，作为动作延迟的起点
+     */
+    public void evaluate(SensorType sensor, double value, long receivedNanos) {
+        RuleGroup group = groups.get(sensor);
+        if (group == null || Double.isNaN(value)) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        List<SensorRule> changed = new ArrayList<>(0);
+        Map<String, DeviceAction> actions;
+        synchronized (group) {
+            actions = group.evaluate(value, receivedNanos, changed);
+        }
+        evaluationLatency.record(System.nanoTime() - start);
+
+        // 先提交动作，再打印日志，日志不计入动作延迟
+        for (DeviceAction action : actions.values()) {
+            dispatch(action, receivedNanos);
+        }
+        for (SensorRule rule : changed) {
+            System.out.printf("规则 %s %s: %s %.1f%s%n", rule.getName(), rule.isActive() ? "触发" : "解除",
+                sensor.getDisplayName(), value, sensor.getUnit());
+        }
+    }
+
+    private void dispatch(DeviceAction action, long receivedNanos) {
+        actionsSent.incrementAndGet();
+        CompletableFuture<Boolean> result = action.submit(controller, CommandPriority.CONTROL, ACTION_DEADLINE_MS);
+        if (action.isStateSetting()) {
+            CompletableFuture<Boolean> previous = pendingState.put(action.getCommand(), result);
+            if (previous != null && previous.cancel(false)) {
+                actionsSuperseded.incrementAndGet();
+            }
+        }
+        result.whenComplete((ok, error) -> {
+            if (action.isStateSetting()) {
+                pendingState.remove(action.getCommand(), result);
+            }
+            if (error == null && ok != null && ok) {
+                actionLatency.record(System.nanoTime() - receivedNanos);
+            } else if (!(error instanceof CancellationException)) {
+                actionsFailed.incrementAndGet();
+                System.err.println("规则动作执行失败: " + action);
+            }
+        });
+    }
+
+    public List<SensorRule> getRules() {
+        return rules;
+    }
+
+    /**
+     * 每个读数的规则评估耗时
+     */
+    public LatencyRecorder getEvaluationLatency() {
+        return evaluationLatency;
+    }
+
+    /**
+     * 从收到传感器读数到动作写入设备的延迟
+     */
+    public LatencyRecorder getActionLatency() {
+        return actionLatency;
+    }
+
+    public long getActionsSent() {
+        return actionsSent.get();
+    }
+
+    public long getActionsFailed() {
+        return actionsFailed.get();
+    }
+
+    /**
+     * 被更新的同类动作覆盖而未发送的次数
+     */
+    public long getActionsSuperseded() {
+        return actionsSuperseded.get();
+    }
+
+    /**
+     * 生成规则引擎摘要
+     */
+    public String summary() {
+        long active = rules.stream().filter(SensorRule::isActive).count();
+        return String.format("规则 %d 条 (触发中 %d), 动作 %d (失败 %d, 被覆盖 %d)%n  评估耗时 - %s%n  传感器到动作 - %s",
+            rules.size(), active, getActionsSent(), getActionsFailed(), getActionsSuperseded(),
+            evaluationLatency.summary(), actionLatency.summary());
+    }
+
+    /**
+     * 同一传感器的规则
+     */
+    private static class RuleGroup {
+        private final SensorRule[] valueRules;
+        private final ChangeWindow[] windows;
+
+        RuleGroup(List<SensorRule> rules) {
+            List<SensorRule> values = new ArrayList<>();
+            Map<Long, List<SensorRule>> byWindow = new TreeMap<>();
+            for (SensorRule rule : rules) {
+                if (rule.getCondition().isRate()) {
+                    byWindow.computeIfAbsent(rule.getWindowNanos(), window -> new ArrayList<>()).add(rule);
+                } else {
+                    values.add(rule);
+                }
+            }
+            this.valueRules = values.toArray(new SensorRule[0]);
+            this.windows = byWindow.entrySet().stream()
+                .map(entry -> new ChangeWindow(entry.getKey(), entry.getValue().toArray(new SensorRule[0])))
+                .toArray(ChangeWindow[]::new);
+        }
+
+        /**
+         * 评估所有规则
+         * @param changed 输出状态发生变化的规则
+         * @return 需要执行的动作，相同动作只保留一个
+         */
+        Map<String, DeviceAction> evaluate(double value, long nanos, List<SensorRule> changed) {
+            Map<String, DeviceAction> actions = Collections.emptyMap();
+            for (SensorRule rule : valueRules) {
+                actions = apply(rule, value, actions, changed);
+            }
+            for (ChangeWindow window : windows) {
+                double delta = window.add(nanos, value);
+                for (SensorRule rule : window.rules) {
+                    actions = apply(rule, delta, actions, changed);
+                }
+            }
+            return actions;
+        }
+
+        private static Map<String, DeviceAction> apply(SensorRule rule, double metric,
+                                                       Map<String, DeviceAction> actions, List<SensorRule> changed) {
+            boolean wasActive = rule.isActive();
+            DeviceAction action = rule.update(metric);
+            if (rule.isActive() != wasActive) {
+                changed.add(rule);
+            }
+            if (action == null) {
+                return actions;
+            }
+            if (actions.isEmpty()) {
+                actions = new LinkedHashMap<>();
+            }
+            if (action.isStateSetting()) {
+                // 同一读数中后面规则设置的状态覆盖前面的
+                String key = "state:" + action.getCommand();
+                actions.remove(key);
+                actions.put(key, action);
+            } else {
+                actions.putIfAbsent(action.toString(), action);
+            }
+            return actions;
+        }
+    }
+
+    /**
+     * 时间窗口内的变化量，窗口内只保留计算所需的样本
+     * 样本存放在基本类型的环形缓冲区中，加入样本不分配对象 (缓冲区满时扩容)
+     */
+    private static class ChangeWindow {
+        private static final int INITIAL_CAPACITY = 16;
+
+        private final long windowNanos;
+        private final SensorRule[] rules;
+        private long[] times = new long[INITIAL_CAPACITY];
+        private double[] values = new double[INITIAL_CAPACITY];
+        private int head = 0;
+        private int size = 0;
+
+        ChangeWindow(long windowNanos, SensorRule[] rules) {
+            this.windowNanos = windowNanos;
+            this.rules = rules;
+        }
+
+        /**
+         * 加入样本并返回窗口内的变化量
+         */
+        double add(long nanos, double value) {
+            if (size == times.length) {
+                grow();
+            }
+            int tail = (head + size) & (times.length - 1);
+            times[tail] = nanos;
+            values[tail] = value;
+            size++;
+            while (size > 1 && nanos - times[head] > windowNanos) {
+                head = (head + 1) & (times.length - 1);
+                size--;
+            }
+            return value - values[head];
+        }
+
+        /**
+         * 容量翻倍，保持为2的幂以便用位运算取模
+         */
+        private void grow() {
+            long[] newTimes = new long[times.length * 2];
+            double[] newValues = new double[values.length * 2];
+            for (int i = 0; i < size; i++) {
+                int index = (head + i) & (times.length - 1);
+                newTimes[i] = times[index];
+                newValues[i] = values[index];
+            }
+            times = newTimes;
+            values = newValues;
+            head = 0;
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package github.nooblong;
+
+/**
+ * 传感器数据监听器
+ */
+public interface SensorListener {
+
+    /**
+     * 收到一个传感器值
+     * @param sensor 传感器类型
+     * @param value 传感器值
+     */
+    void onReading(SensorType sensor, double value);
+}
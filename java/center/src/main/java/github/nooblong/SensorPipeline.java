@@ -0,0 +1,133 @@
+package github.nooblong;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 传感器数据处理管道
+ * 将多个处理阶段串联在控制器和下游消费者之间，只有通过所有阶段的值才会通知监听器
+ *
+ * 管道描述格式 (逗号分隔，按顺序执行):
+ *   median:N              中值滤波，剔除尖峰
+ *   ewma:ALPHA            指数加权平滑
+ *   deadband:THRESHOLD    死区，仅在变化超过阈值时输出
+ *   window:N[:mean|min|max] 每N个样本输出一次聚合值
+ */
+public class SensorPipeline {
+
+    private final SensorType sensor;
+    private final SensorStage[] stages;
+    private final List<SensorListener> listeners = new CopyOnWriteArrayList<>();
+    private long received = 0;
+    private long emitted = 0;
+
+    public SensorPipeline(SensorType sensor, SensorStage... stages) {
+        this.sensor = sensor;
+        this.stages = stages.clone();
+    }
+
+    /**
+     * 根据描述创建管道
+     * @param sensor 传感器类型
+     * @param spec 管道描述，空字符串表示不做处理
+     * @throws IllegalArgumentException 描述无效时抛出
+     */
+    public static SensorPipeline parse(SensorType sensor, String spec) {
+        List<SensorStage> stages = new ArrayList<>();
+        if (spec != null && !spec.trim().isEmpty()) {
+            for (String item : spec.split(",")) {
+                stages.add(parseStage(item.trim()));
+            }
+        }
+        return new SensorPipeline(sensor, stages.toArray(new SensorStage[0]));
+    }
+
+    private static SensorStage parseStage(String item) {
+        String[] parts = item.split(":");
+        try {
+            switch (parts[0].toLowerCase()) {
+                case "median":
+                    return new MedianFilterStage(Integer.parseInt(parts[1]));
+                case "ewma":
+                    return new EwmaStage(Double.parseDouble(parts[1]));
+                case "deadband":
+                    return new DeadbandStage(Double.parseDouble(parts[1]));
+                case "window":
+                    WindowAggregateStage.Mode mode = parts.length > 2
+                        ? WindowAggregateStage.Mode.valueOf(parts[2].toUpperCase())
+                        : WindowAggregateStage.Mode.MEAN;
+                    return new WindowAggregateStage(Integer.parseInt(parts[1]), mode);
+                default:
+                    throw new IllegalArgumentException("未知处理阶段: " + parts[0]);
+            }
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("处理阶段缺少参数: " + item);
+        }
+    }
+
+    /**
+     * 添加监听器
+     */
+    public void addListener(SensorListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * 移除监听器
+     */
+    public void removeListener(SensorListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * 处理一个原始样本
+     * @param value 原始值
+     * @return 管道输出值，被丢弃时返回 {@link Double#NaN}
+     */
+    public synchronized double process(double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            return Double.NaN;
+        }
+        received++;
+        double current = value;
+        for (SensorStage stage : stages) {
+            current = stage.process(current);
+            if (Double.isNaN(current)) {
+                return Double.NaN;
+            }
+        }
+        emitted++;
+        for (SensorListener listener : listeners) {
+            listener.onReading(sensor, current);
+        }
+        return current;
+    }
+
+    /**
+     * 清空所有阶段的状态
+     */
+    public synchronized void reset() {
+        for (SensorStage stage : stages) {
+            stage.reset();
+        }
+    }
+
+    public SensorType getSensor() {
+        return sensor;
+    }
+
+    /**
+     * 输入样本数
+     */
+    public synchronized long getReceived() {
+        return received;
+    }
+
+    /**
+     * 输出样本数
+     */
+    public synchronized long getEmitted() {
+        return emitted;
+    }
+}
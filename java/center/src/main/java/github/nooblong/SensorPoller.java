@@ -0,0 +1,238 @@
+package github.nooblong;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * 传感器轮询
+ * 每个传感器使用独立的调度和间隔。所有读取仍经过同一个IO线程，为了不让一个无响应的传感器拖住其他传感器:
+ *   - 每次读取的响应超时按轮询间隔限制 (间隔的1/4，100 ms - 2 s)，而不是固定的2秒
+ *   - 连续多次读取失败的传感器退到最大间隔，只偶尔探测，读取成功后恢复
+ *
+ * 间隔自适应: 相邻两次读数的变化超过阈值时间隔减半 (不低于最小间隔)，
+ * 数据稳定时间隔逐步拉长25% (不超过最大间隔)。
+ * 读取耗时超过间隔时，错过的轮次直接跳过并计数，不会在之后集中补发。
+ */
+public class SensorPoller {
+
+    // 数据稳定时每次拉长间隔的比例
+    private static final double BACKOFF_FACTOR = 1.25;
+    // 响应超时占轮询间隔的比例及上下限
+    private static final int TIMEOUT_DIVISOR = 4;
+    private static final int MIN_TIMEOUT_MS = 100;
+    private static final int MAX_TIMEOUT_MS = 2000;
+    // 连续失败多少次后退到最大间隔
+    private static final int FAIL_FAST_AFTER = 3;
+
+    private final HidController controller;
+    private final Consumer<SensorReading> consumer;
+    private final List<Schedule> schedules = new ArrayList<>();
+    private ScheduledExecutorService executor;
+
+    /**
+     * @param controller 控制器
+     * @param consumer 读数回调，在轮询线程上调用
+     */
+    public SensorPoller(HidController controller, Consumer<SensorReading> consumer) {
+        this.controller = controller;
+        this.consumer = consumer;
+    }
+
+    /**
+     * 添加一个传感器的轮询
+     * @param sensor 传感器类型
+     * @param initialIntervalMs 初始间隔
+     * @param minIntervalMs 最小间隔
+     * @param maxIntervalMs 最大间隔
+     * @param changeThreshold 相邻读数变化超过该值时加快轮询
+     */
+    public synchronized void addSensor(SensorType sensor, long initialIntervalMs, long minIntervalMs,
+                                       long maxIntervalMs, double changeThreshold) {
+        if (executor != null) {
+            throw new IllegalStateException("轮询已启动");
+        }
+        schedules.add(new Schedule(sensor, initialIntervalMs, minIntervalMs, maxIntervalMs, changeThreshold));
+    }
+
+    /**
+     * 根据配置添加所有启用的传感器
+     */
+    public void addEnabledSensors(DeviceConfig config) {
+        long initialMs = TimeUnit.SECONDS.toMillis(config.getSensorInterval());
+        for (SensorType sensor : SensorType.values()) {
+            if (config.isSensorEnabled(sensor)) {
+                addSensor(sensor, initialMs, config.getSensorPollMinMs(sensor), config.getSensorPollMaxMs(sensor),
+                    config.getSensorPollChange(sensor));
+            }
+        }
+    }
+
+    /**
+     * 启动轮询，每个传感器占用一个线程，互不等待
+     * @param initialDelayMs 首次读取前的延迟
+     */
+    public synchronized void start(long initialDelayMs) {
+        if (executor != null || schedules.isEmpty()) {
+            return;
+        }
+        executor = Executors.newScheduledThreadPool(schedules.size(), r -> {
+            Thread t = new Thread(r, "sensor-poll");
+            t.setDaemon(true);
+            return t;
+        });
+        long first = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(initialDelayMs);
+        for (Schedule schedule : schedules) {
+            schedule.nextDueNanos = first;
+            executor.schedule(schedule::poll, initialDelayMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * 停止轮询
+     */
+    public synchronized void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    private synchronized void reschedule(Schedule schedule, long delayNanos) {
+        if (executor != null) {
+            executor.schedule(schedule::poll, delayNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * 生成各传感器的轮询摘要
+     */
+    public synchronized String summary() {
+        StringBuilder sb = new StringBuilder();
+        for (Schedule schedule : schedules) {
+            if (sb.length() > 0) {
+                sb.append(System.lineSeparator());
+            }
+            sb.append(schedule.summary());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 单个传感器的轮询状态
+     */
+    private class Schedule {
+        private final SensorType sensor;
+        private final long minIntervalMs;
+        private final long maxIntervalMs;
+        private final double changeThreshold;
+        private final AtomicLong reads = new AtomicLong();
+        private final AtomicLong failures = new AtomicLong();
+        private final AtomicLong skipped = new AtomicLong();
+        private volatile int consecutiveFailures = 0;
+
+        private volatile long intervalMs;
+        private long nextDueNanos;
+        private long lastReceiveNanos = 0;
+        private double lastValue = Double.NaN;
+
+        Schedule(SensorType sensor, long initialIntervalMs, long minIntervalMs, long maxIntervalMs, double changeThreshold) {
+            this.sensor = sensor;
+            this.minIntervalMs = Math.max(1, minIntervalMs);
+            this.maxIntervalMs = Math.max(this.minIntervalMs, maxIntervalMs);
+            this.changeThreshold = changeThreshold;
+            this.intervalMs = Math.max(this.minIntervalMs, Math.min(this.maxIntervalMs, initialIntervalMs));
+        }
+
+        void poll() {
+            try {
+                long interval = intervalMs;
+                // 截止时间为一个间隔，下一轮开始前仍未发送的读取直接放弃；缓存的读数最多使用半个间隔前的
+                SensorReading reading = controller.readSensorReading(sensor, CommandPriority.BACKGROUND,
+                    interval, Math.min(controller.getSensorCache().getMaxAgeMs(sensor), interval / 2),
+                    responseTimeoutMs(interval));
+                if (reading == null) {
+                    onFailure();
+                } else if (reading.getHostReceiveNanos() != lastReceiveNanos) {
+                    onSuccess();
+                    reads.incrementAndGet();
+                    lastReceiveNanos = reading.getHostReceiveNanos();
+                    adapt(reading.getValue());
+                    consumer.accept(reading);
+                }
+            } catch (Exception e) {
+                onFailure();
+                System.err.printf("读取%s失败: %s%n", sensor.getDisplayName(), e.getMessage());
+            } finally {
+                scheduleNext();
+            }
+        }
+
+        /**
+         * 响应超时不超过间隔的一部分，无响应的传感器每轮最多占用IO线程这么久
+         */
+        private int responseTimeoutMs(long interval) {
+            return (int) Math.max(MIN_TIMEOUT_MS, Math.min(MAX_TIMEOUT_MS, interval / TIMEOUT_DIVISOR));
+        }
+
+        private void onFailure() {
+            failures.incrementAndGet();
+            if (++consecutiveFailures == FAIL_FAST_AFTER) {
+                System.err.printf("%s连续%d次读取失败，轮询间隔退到 %d ms%n",
+                    sensor.getDisplayName(), consecutiveFailures, maxIntervalMs);
+            }
+            if (consecutiveFailures >= FAIL_FAST_AFTER) {
+                intervalMs = maxIntervalMs;
+                lastValue = Double.NaN;
+            }
+        }
+
+        private void onSuccess() {
+            if (consecutiveFailures >= FAIL_FAST_AFTER) {
+                System.out.printf("%s读取恢复%n", sensor.getDisplayName());
+                intervalMs = minIntervalMs;
+            }
+            consecutiveFailures = 0;
+        }
+
+        /**
+         * 按读数变化调整间隔
+         */
+        private void adapt(double value) {
+            if (!Double.isNaN(lastValue)) {
+                if (Math.abs(value - lastValue) >= changeThreshold) {
+                    intervalMs = Math.max(minIntervalMs, intervalMs / 2);
+                } else {
+                    intervalMs = Math.min(maxIntervalMs, (long) (intervalMs * BACKOFF_FACTOR));
+                }
+            }
+            lastValue = value;
+        }
+
+        /**
+         * 按新间隔安排下一轮，已经错过的轮次跳过并计数
+         */
+        private void scheduleNext() {
+            long intervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMs);
+            long now = System.nanoTime();
+            long next = nextDueNanos + intervalNanos;
+            if (next - now < 0) {
+                long missed = (now - next) / intervalNanos + 1;
+                skipped.addAndGet(missed);
+                next += missed * intervalNanos;
+            }
+            nextDueNanos = next;
+            reschedule(this, next - now);
+        }
+
+        String summary() {
+            return String.format("%s: 间隔 %d ms (%d-%d ms), 读取 %d, 失败 %d (连续 %d), 跳过 %d",
+                sensor.getDisplayName(), intervalMs, minIntervalMs, maxIntervalMs,
+                reads.get(), failures.get(), consecutiveFailures, skipped.get());
+        }
+    }
+}
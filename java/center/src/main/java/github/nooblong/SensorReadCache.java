@@ -0,0 +1,151 @@
+package github.nooblong;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * 传感器读取缓存
+ * 每个传感器保留最近一次读数，在最长有效期内直接返回缓存值；
+ * 缓存过期时并发的读取合并为一次设备往返，设备负载只取决于数据新鲜度要求，与调用者数量无关
+ *
+ * 只有相同优先级的读取才会合并: 交互读取不会加入后台轮询进行中的读取，
+ * 否则会按后台优先级排队并继承后台读取的截止时间
+ *
+ * 清空缓存时代数加一，清空前已开始的读取完成后不再写入缓存，避免把旧连接的读数带回来
+ */
+public class SensorReadCache {
+
+    private final Map<SensorType, Long> maxAgeMs = new ConcurrentHashMap<>();
+    private final Map<SensorType, SensorReading> latest = new ConcurrentHashMap<>();
+    private final Map<CommandPriority, SingleFlight<SensorType, SensorReading>> flights = new EnumMap<>(CommandPriority.class);
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong loads = new AtomicLong();
+    private final AtomicLong generation = new AtomicLong();
+
+    public SensorReadCache() {
+        for (CommandPriority priority : CommandPriority.values()) {
+            flights.put(priority, new SingleFlight<>());
+        }
+    }
+
+    /**
+     * 设置传感器读数的最长有效期
+     * @param sensor 传感器类型
+     * @param ageMs 有效期(毫秒)，0表示不缓存 (并发读取仍会合并)
+     */
+    public void setMaxAgeMs(SensorType sensor, long ageMs) {
+        maxAgeMs.put(sensor, Math.max(0, ageMs));
+    }
+
+    /**
+     * 传感器读数的最长有效期(毫秒)，未设置时为0
+     */
+    public long getMaxAgeMs(SensorType sensor) {
+        return maxAgeMs.getOrDefault(sensor, 0L);
+    }
+
+    /**
+     * 按传感器配置的有效期读取
+     * @param sensor 传感器类型
+     * @param priority 读取优先级，只与相同优先级的进行中读取合并
+     * @param loader 缓存过期时从设备读取，失败返回null
+     * @return 传感器读数，失败返回null
+     */
+    public SensorReading get(SensorType sensor, CommandPriority priority, Supplier<SensorReading> loader) {
+        return get(sensor, getMaxAgeMs(sensor), priority, loader);
+    }
+
+    /**
+     * 按指定有效期读取
+     * @param sensor 传感器类型
+     * @param ageMs 可接受的最长数据年龄(毫秒)
+     * @param priority 读取优先级，只与相同优先级的进行中读取合并
+     * @param loader 缓存过期时从设备读取，失败返回null
+     * @return 传感器读数，失败返回null
+     */
+    public SensorReading get(SensorType sensor, long ageMs, CommandPriority priority, Supplier<SensorReading> loader) {
+        SensorReading cached = latest.get(sensor);
+        if (isFresh(cached, ageMs)) {
+            hits.incrementAndGet();
+            return cached;
+        }
+
+        return flights.get(priority).execute(sensor, () -> {
+            // 等待合并期间可能已有其他读取完成
+            SensorReading current = latest.get(sensor);
+            if (isFresh(current, ageMs)) {
+                hits.incrementAndGet();
+                return current;
+            }
+            loads.incrementAndGet();
+            long loadGeneration = generation.get();
+            SensorReading loaded = loader.get();
+            if (loaded != null) {
+                // 在 compute 内检查代数: invalidate 先加代数再清空，检查之后的清空仍会移除这里写入的读数
+                latest.compute(sensor, (key, old) -> {
+                    if (generation.get() != loadGeneration) {
+                        return old;
+                    }
+                    return old == null || loaded.getHostReceiveNanos() - old.getHostReceiveNanos() >= 0 ? loaded : old;
+                });
+            }
+            return loaded;
+        });
+    }
+
+    /**
+     * 最近一次缓存的读数，不检查有效期，没有时返回null
+     */
+    public SensorReading peek(SensorType sensor) {
+        return latest.get(sensor);
+    }
+
+    /**
+     * 清空缓存的读数，正在进行的读取完成后不会写入缓存
+     */
+    public void invalidate() {
+        generation.incrementAndGet();
+        latest.clear();
+    }
+
+    private static boolean isFresh(SensorReading reading, long ageMs) {
+        return reading != null && ageMs > 0
+            && System.nanoTime() - reading.getHostReceiveNanos() <= TimeUnit.MILLISECONDS.toNanos(ageMs);
+    }
+
+    /**
+     * 直接由缓存返回的次数
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * 实际读取设备的次数
+     */
+    public long getLoads() {
+        return loads.get();
+    }
+
+    /**
+     * 合并到其他进行中读取的次数
+     */
+    public long getCoalesced() {
+        long shared = 0;
+        for (SingleFlight<SensorType, SensorReading> flight : flights.values()) {
+            shared += flight.getSharedCalls();
+        }
+        return shared;
+    }
+
+    /**
+     * 生成缓存摘要
+     */
+    public String summary() {
+        return String.format("设备读取 %d, 缓存命中 %d, 合并 %d", getLoads(), getHits(), getCoalesced());
+    }
+}
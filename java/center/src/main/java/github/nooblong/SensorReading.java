@@ -0,0 +1,47 @@
+package github.nooblong;
+
+/**
+ * 带时间戳的传感器读数
+ */
+public class SensorReading {
+
+    private final SensorType sensor;
+    private final float value;
+    private final long hostReceiveNanos;
+    private final long deviceTimeUs;
+
+    public SensorReading(SensorType sensor, float value, long hostReceiveNanos, long deviceTimeUs) {
+        this.sensor = sensor;
+        this.value = value;
+        this.hostReceiveNanos = hostReceiveNanos;
+        this.deviceTimeUs = deviceTimeUs;
+    }
+
+    public SensorType getSensor() {
+        return sensor;
+    }
+
+    public float getValue() {
+        return value;
+    }
+
+    /**
+     * 主机接收时间 (System.nanoTime)
+     */
+    public long getHostReceiveNanos() {
+        return hostReceiveNanos;
+    }
+
+    /**
+     * 设备时间(微秒)，时钟未同步时为-1
+     */
+    public long getDeviceTimeUs() {
+        return deviceTimeUs;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %.1f%s%s", sensor.getDisplayName(), value, sensor.getUnit(),
+            deviceTimeUs >= 0 ? String.format(" (设备时间 %.3f s)", deviceTimeUs / 1_000_000.0) : "");
+    }
+}
@@ -0,0 +1,249 @@
+package github.nooblong;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 传感器规则
+ * 由一行文本编译得到，跟踪自己的触发状态，只在状态变化时返回需要执行的动作
+ *
+ * 格式:
+ *   名称 传感器 above|below 阈值 [hysteresis 回差] then 动作 [else 动作]
+ *   名称 传感器 rising|falling 变化量 within 秒 [hysteresis 回差] then 动作 [else 动作]
+ *
+ * 示例:
+ *   humid-high humidity above 70 hysteresis 5 then led 255 0 0 else led 0 0 0
+ *   temp-rise  temperature rising 2 within 60 then click
+ *
+ * above: 值超过阈值时触发，回落到 阈值-回差 以下时解除；below 方向相反。
+ * rising/falling: 以最近若干秒内的变化量作为判断值，上升/下降超过变化量时触发。
+ * 触发时执行 then 动作，解除时执行 else 动作 (可选)。
+ */
+public class SensorRule {
+
+    /**
+     * 判断条件
+     */
+    public enum Condition {
+        ABOVE("above"),
+        BELOW("below"),
+        RISING("rising"),
+        FALLING("falling");
+
+        private final String key;
+
+        Condition(String key) {
+            this.key = key;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        /**
+         * 是否以变化量作为判断值
+         */
+        public boolean isRate() {
+            return this == RISING || this == FALLING;
+        }
+
+        public static Condition fromKey(String key) {
+            for (Condition condition : values()) {
+                if (condition.key.equalsIgnoreCase(key)) {
+                    return condition;
+                }
+            }
+            throw new IllegalArgumentException("未知条件: " + key);
+        }
+    }
+
+    private final String name;
+    private final SensorType sensor;
+    private final Condition condition;
+    private final double threshold;
+    private final double hysteresis;
+    private final long windowNanos;
+    private final DeviceAction thenAction;
+    private final DeviceAction elseAction;
+    // 按方向归一化后的触发和解除阈值，判断值大于触发阈值时触发，小于解除阈值时解除
+    private final double activateAbove;
+    private final double releaseBelow;
+
+    private volatile boolean active = false;
+    private volatile long triggers = 0;
+
+    public SensorRule(String name, SensorType sensor, Condition condition, double threshold, double hysteresis,
+                      long windowMs, DeviceAction thenAction, DeviceAction elseAction) {
+        if (hysteresis < 0) {
+            throw new IllegalArgumentException("回差不能为负数");
+        }
+        if (condition.isRate() && (windowMs <= 0 || threshold <= 0)) {
+            throw new IllegalArgumentException("变化量和时间窗口必须大于0");
+        }
+        this.name = name;
+        this.sensor = sensor;
+        this.condition = condition;
+        this.threshold = threshold;
+        this.hysteresis = hysteresis;
+        this.windowNanos = condition.isRate() ? TimeUnit.MILLISECONDS.toNanos(windowMs) : 0;
+        this.thenAction = thenAction;
+        this.elseAction = elseAction;
+
+        // below/falling 的判断值取反后统一按 "大于" 判断；falling 的变化量本身为正数，不需要取反
+        double directed = condition == Condition.BELOW ? -threshold : threshold;
+        this.activateAbove = directed;
+        this.releaseBelow = directed - hysteresis;
+    }
+
+    /**
+     * 解析一行规则
+     * @throws IllegalArgumentException 格式无效时抛出
+     */
+    public static SensorRule parse(String line) {
+        String text = line.trim();
+        String elseText = null;
+        int elseIndex = indexOfWord(text, "else");
+        if (elseIndex >= 0) {
+            elseText = text.substring(elseIndex + 4).trim();
+            text = text.substring(0, elseIndex).trim();
+        }
+        int thenIndex = indexOfWord(text, "then");
+        if (thenIndex < 0) {
+            throw new IllegalArgumentException("缺少 then 动作");
+        }
+        String thenText = text.substring(thenIndex + 4).trim();
+        String[] parts = text.substring(0, thenIndex).trim().split("\\s+");
+        if (parts.length < 4) {
+            throw new IllegalArgumentException("规则需要 名称 传感器 条件 阈值");
+        }
+
+        String name = parts[0];
+        SensorType sensor = SensorType.fromKey(parts[1]);
+        if (sensor == null) {
+            throw new IllegalArgumentException("未知传感器: " + parts[1]);
+        }
+        Condition condition = Condition.fromKey(parts[2]);
+        double threshold = parseNumber(parts[3]);
+        double hysteresis = 0;
+        long windowMs = 0;
+
+        for (int i = 4; i < parts.length; i += 2) {
+            if (i + 1 >= parts.length) {
+                throw new IllegalArgumentException(parts[i] + " 缺少参数");
+            }
+            switch (parts[i].toLowerCase()) {
+                case "hysteresis":
+                    hysteresis = parseNumber(parts[i + 1]);
+                    break;
+                case "within":
+                    windowMs = Math.round(parseNumber(parts[i + 1]) * 1000);
+                    break;
+                default:
+                    throw new IllegalArgumentException("未知选项: " + parts[i]);
+            }
+        }
+        if (condition.isRate() && windowMs == 0) {
+            throw new IllegalArgumentException(condition.getKey() + " 需要 within 秒");
+        }
+        if (!condition.isRate() && windowMs != 0) {
+            throw new IllegalArgumentException("within 只能用于 rising/falling");
+        }
+
+        return new SensorRule(name, sensor, condition, threshold, hysteresis, windowMs,
+            DeviceAction.parse(thenText), elseText != null ? DeviceAction.parse(elseText) : null);
+    }
+
+    private static int indexOfWord(String text, String word) {
+        String[] tokens = text.split("\\s+");
+        int position = 0;
+        for (String token : tokens) {
+            position = text.indexOf(token, position);
+            if (token.equalsIgnoreCase(word)) {
+                return position;
+            }
+            position += token.length();
+        }
+        return -1;
+    }
+
+    private static double parseNumber(String value) {
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("无效的数字: " + value);
+        }
+    }
+
+    /**
+     * 用新的判断值更新状态
+     * @param metric 传感器值，rising/falling 规则为时间窗口内的变化量
+     * @return 状态变化时需要执行的动作，未变化或没有对应动作时返回null
+     */
+    DeviceAction update(double metric) {
+        double directed = condition == Condition.BELOW || condition == Condition.FALLING ? -metric : metric;
+        if (!active && directed > activateAbove) {
+            active = true;
+            triggers++;
+            return thenAction;
+        }
+        if (active && directed < releaseBelow) {
+            active = false;
+            return elseAction;
+        }
+        return null;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public SensorType getSensor() {
+        return sensor;
+    }
+
+    public Condition getCondition() {
+        return condition;
+    }
+
+    public double getThreshold() {
+        return threshold;
+    }
+
+    public double getHysteresis() {
+        return hysteresis;
+    }
+
+    /**
+     * 变化量的时间窗口(纳秒)，非变化率规则为0
+     */
+    public long getWindowNanos() {
+        return windowNanos;
+    }
+
+    public boolean isActive() {
+        return active;
+    }
+
+    /**
+     * 触发次数
+     */
+    public long getTriggers() {
+        return triggers;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(name).append(' ').append(sensor.getKey()).append(' ').append(condition.getKey()).append(' ').append(threshold);
+        if (condition.isRate()) {
+            sb.append(" within ").append(TimeUnit.NANOSECONDS.toMillis(windowNanos) / 1000.0);
+        }
+        if (hysteresis > 0) {
+            sb.append(" hysteresis ").append(hysteresis);
+        }
+        sb.append(" then ").append(thenAction);
+        if (elseAction != null) {
+            sb.append(" else ").append(elseAction);
+        }
+        return sb.toString();
+    }
+}
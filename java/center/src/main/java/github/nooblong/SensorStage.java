@@ -0,0 +1,20 @@
+package github.nooblong;
+
+/**
+ * 传感器数据处理阶段
+ * 每个阶段增量处理一个样本，处理过程中不分配内存
+ */
+public interface SensorStage {
+
+    /**
+     * 处理一个样本
+     * @param value 输入值
+     * @return 输出值，返回 {@link Double#NaN} 表示丢弃该样本，不再向下游传递
+     */
+    double process(double value);
+
+    /**
+     * 清空内部状态
+     */
+    void reset();
+}
@@ -0,0 +1,65 @@
+package github.nooblong;
+
+/**
+ * ESP32传感器类型
+ * 对应设备上可读取的传感器及其HID命令
+ */
+public enum SensorType {
+
+    TEMPERATURE("temperature", "温度", "°C", HidController.Commands.GET_TEMPERATURE),
+    HUMIDITY("humidity", "湿度", "%", HidController.Commands.GET_HUMIDITY);
+
+    private final String key;
+    private final String displayName;
+    private final String unit;
+    private final byte command;
+
+    SensorType(String key, String displayName, String unit, byte command) {
+        this.key = key;
+        this.displayName = displayName;
+        this.unit = unit;
+        this.command = command;
+    }
+
+    /**
+     * 配置文件和API中使用的名称
+     */
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * 显示名称
+     */
+    public String getDisplayName() {
+        return displayName;
+    }
+
+    /**
+     * 单位
+     */
+    public String getUnit() {
+        return unit;
+    }
+
+    /**
+     * 读取该传感器的命令字节
+     */
+    public byte getCommand() {
+        return command;
+    }
+
+    /**
+     * 根据名称查找传感器
+     * @param key 传感器名称 (如 temperature)
+     * @return 传感器类型，未找到返回null
+     */
+    public static SensorType fromKey(String key) {
+        for (SensorType type : values()) {
+            if (type.key.equalsIgnoreCase(key)) {
+                return type;
+            }
+        }
+        return null;
+    }
+}
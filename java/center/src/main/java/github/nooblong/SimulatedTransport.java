@@ -0,0 +1,203 @@
+package github.nooblong;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 模拟设备传输通道
+ * 不需要开发板即可运行压力测试，按USB全速中断端点的轮询节拍模拟报告的收发时间
+ *
+ * 时序模型: 输出报告在下一个轮询节拍发出，设备按顺序处理 (每条命令耗时固定)，
+ * 响应在处理完成后的下一个轮询节拍到达主机。每隔固定条数的命令模拟一次设备卡顿，用于观察尾延迟。
+ */
+public class SimulatedTransport implements HidTransport {
+
+    private final long pollIntervalNanos;
+    private final long processingNanos;
+    private final int stallEvery;
+    private final long stallNanos;
+    private final long epochNanos = System.nanoTime();
+    private final long epochMicros = System.currentTimeMillis() * 1000;
+    private final Random random = new Random(42);
+    private final ArrayDeque<Response> responses = new ArrayDeque<>();
+
+    private long deviceBusyUntil;
+    private long commandCount = 0;
+    private volatile boolean open = true;
+
+    /**
+     * @param pollIntervalMicros 轮询间隔(微秒)
+     * @param processingMicros 设备处理每条命令的耗时(微秒)
+     * @param stallEvery 每隔多少条命令卡顿一次，0表示不卡顿
+     * @param stallMs 每次卡顿的时长(毫秒)
+     */
+    public SimulatedTransport(long pollIntervalMicros, long processingMicros, int stallEvery, long stallMs) {
+        this.pollIntervalNanos = TimeUnit.MICROSECONDS.toNanos(Math.max(1, pollIntervalMicros));
+        this.processingNanos = TimeUnit.MICROSECONDS.toNanos(Math.max(0, processingMicros));
+        this.stallEvery = Math.max(0, stallEvery);
+        this.stallNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, stallMs));
+        this.deviceBusyUntil = epochNanos;
+    }
+
+    /**
+     * 根据配置创建模拟设备
+     */
+    public static SimulatedTransport fromConfig(DeviceConfig config) {
+        return new SimulatedTransport(config.getSimulatedPollIntervalMicros(), config.getSimulatedProcessingMicros(),
+            config.getSimulatedStallEvery(), config.getSimulatedStallMs());
+    }
+
+    @Override
+    public int write(byte[] data, int length, byte reportId) {
+        int offset = HidController.commandOffset(reportId);
+        if (!open || length < offset + 1) {
+            return -1;
+        }
+        // 等到下一个轮询节拍，报告才会发出
+        long sent = nextPoll(System.nanoTime());
+        parkUntil(sent);
+
+        byte command = data[offset];
+        byte[] reply;
+        synchronized (this) {
+            long start = Math.max(sent, deviceBusyUntil);
+            long done = start + processingNanos;
+            commandCount++;
+            if (stallEvery > 0 && commandCount % stallEvery == 0) {
+                done += stallNanos;
+            }
+            deviceBusyUntil = done;
+            reply = reply(command, data, offset + 1, done);
+            if (reply != null) {
+                responses.addLast(new Response(nextPoll(done), reply));
+                notifyAll();
+            }
+        }
+        return length;
+    }
+
+    @Override
+    public int read(byte[] buffer, int timeoutMs) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Math.max(0, timeoutMs));
+        Response response;
+        synchronized (this) {
+            while (open && responses.isEmpty()) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return 0;
+                }
+                try {
+                    TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return -1;
+                }
+            }
+            if (!open) {
+                return -1;
+            }
+            response = responses.peekFirst();
+            if (response.readyNanos - deadline > 0) {
+                // 超时前响应不会到达
+                response = null;
+            } else {
+                responses.pollFirst();
+            }
+        }
+        if (response == null) {
+            parkUntil(deadline);
+            return 0;
+        }
+        parkUntil(response.readyNanos);
+        int length = Math.min(buffer.length, response.data.length);
+        System.arraycopy(response.data, 0, buffer, 0, length);
+        return length;
+    }
+
+    /**
+     * 生成命令的回复，不需要回复的命令返回null
+     * @param payload 附加数据在数据包中的起始位置
+     */
+    private byte[] reply(byte command, byte[] data, int payload, long doneNanos) {
+        switch (command) {
+            case HidController.Commands.GET_TEMPERATURE:
+                return ByteBuffer.allocate(4).putFloat(24f + random.nextFloat()).array();
+            case HidController.Commands.GET_HUMIDITY:
+                return ByteBuffer.allocate(4).putFloat(50f + random.nextFloat() * 5).array();
+            case HidController.Commands.PING:
+                return new byte[] {HidController.Commands.PING, data[payload], data[payload + 1]};
+            case HidController.Commands.SYNC_TIME:
+                long deviceMicros = epochMicros + TimeUnit.NANOSECONDS.toMicros(doneNanos - epochNanos);
+                return ByteBuffer.allocate(9).put(HidController.Commands.SYNC_TIME).putLong(deviceMicros).array();
+            case HidController.Commands.GET_REPORT_INFO:
+                return new byte[] {HidController.Commands.GET_REPORT_INFO, 0, 64, 0, 64, 0, 0};
+            case HidController.Commands.GET_HISTORY:
+                // 模拟设备没有缓存的历史数据
+                return new byte[] {HidController.Commands.GET_HISTORY, 0, 0};
+            default:
+                return null;
+        }
+    }
+
+    private long nextPoll(long nanos) {
+        long slots = (nanos - epochNanos + pollIntervalNanos - 1) / pollIntervalNanos;
+        return epochNanos + slots * pollIntervalNanos;
+    }
+
+    private static void parkUntil(long deadlineNanos) {
+        long remaining;
+        while ((remaining = deadlineNanos - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(remaining);
+        }
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            open = false;
+            responses.clear();
+            notifyAll();
+        }
+    }
+
+    @Override
+    public String getPath() {
+        return "simulated";
+    }
+
+    @Override
+    public String getSerialNumber() {
+        return null;
+    }
+
+    @Override
+    public String getProduct() {
+        return "模拟设备";
+    }
+
+    @Override
+    public String getManufacturer() {
+        return "simulated";
+    }
+
+    /**
+     * 等待主机读取的响应
+     */
+    private static class Response {
+        final long readyNanos;
+        final byte[] data;
+
+        Response(long readyNanos, byte[] data) {
+            this.readyNanos = readyNanos;
+            this.data = data;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package github.nooblong;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * 请求合并器
+ * 同一个key上并发的相同请求只执行一次，其余调用者共享这次执行的结果
+ * @param <K> 请求标识
+ * @param <V> 结果类型
+ */
+public class SingleFlight<K, V> {
+
+    private final ConcurrentMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong executions = new AtomicLong();
+    private final AtomicLong sharedCalls = new AtomicLong();
+
+    /**
+     * 执行请求，如果相同key的请求正在进行则等待并共享其结果
+     * @param key 请求标识
+     * @param supplier 实际执行的请求
+     * @return 请求结果
+     */
+    public V execute(K key, Supplier<V> supplier) {
+        CompletableFuture<V> mine = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, mine);
+
+        if (existing != null) {
+            sharedCalls.incrementAndGet();
+            try {
+                return existing.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw e;
+            }
+        }
+
+        executions.incrementAndGet();
+        try {
+            V value = supplier.get();
+            mine.complete(value);
+            return value;
+        } catch (RuntimeException e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, mine);
+        }
+    }
+
+    /**
+     * 实际执行的请求次数
+     */
+    public long getExecutions() {
+        return executions.get();
+    }
+
+    /**
+     * 共享他人结果的调用次数
+     */
+    public long getSharedCalls() {
+        return sharedCalls.get();
+    }
+}
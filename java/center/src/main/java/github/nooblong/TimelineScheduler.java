@@ -0,0 +1,283 @@
+package github.nooblong;
+
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 时间线调度器
+ * 使用单个截止时间队列并发运行多个命令脚本，不为每个脚本占用线程
+ *
+ * 每条命令的截止时间都由脚本开始时间加偏移得到，前一条命令的耗时不会累积到后面。
+ * 定时线程会根据历史的唤醒延迟提前醒来，再自旋到截止时间，以补偿系统定时器误差；
+ * 提前量有上限，每条命令的自旋时间不超过2ms。
+ * 到期的命令异步提交到控制器的命令调度器，定时线程不等待设备响应，
+ * 一个脚本中阻塞的命令 (如等待超时的传感器读取) 不会推迟其他脚本的命令。
+ * 发送偏差在IO线程上命令实际开始写入设备时记录，包含在命令调度器中排队的时间。
+ */
+public class TimelineScheduler {
+
+    // 剩余时间小于该值时不再休眠，改为自旋等待
+    private static final long SPIN_THRESHOLD_NANOS = TimeUnit.MICROSECONDS.toNanos(200);
+    // 提前唤醒的上限，同时也是每条命令自旋等待的上限
+    private static final long MAX_WAKEUP_ADVANCE_NANOS = TimeUnit.MILLISECONDS.toNanos(2);
+
+    private final HidController controller;
+    private final PriorityQueue<Pending> queue = new PriorityQueue<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private final Thread timerThread;
+    private final LatencyRecorder lateness = new LatencyRecorder();
+    private final AtomicLong sequence = new AtomicLong();
+    private volatile boolean running = true;
+    // 系统定时器唤醒延迟的滑动平均，用于提前唤醒
+    private long wakeupAdvanceNanos = 0;
+
+    public TimelineScheduler(HidController controller) {
+        this.controller = controller;
+        this.timerThread = new Thread(this::timerLoop, "timeline-timer");
+        this.timerThread.setDaemon(true);
+        this.timerThread.start();
+    }
+
+    /**
+     * 提交脚本，立即开始运行
+     * @return 脚本运行句柄
+     */
+    public ScriptRun submit(CommandScript script) {
+        if (!running) {
+            throw new IllegalStateException("调度器已关闭");
+        }
+        ScriptRun run = new ScriptRun(script, System.nanoTime());
+        if (script.getEntries().isEmpty()) {
+            run.completion.complete(run);
+            return run;
+        }
+
+        lock.lock();
+        try {
+            for (CommandScript.Entry entry : script.getEntries()) {
+                long deadline = run.startNanos + TimeUnit.MILLISECONDS.toNanos(entry.getOffsetMs());
+                queue.add(new Pending(deadline, sequence.getAndIncrement(), run, entry));
+            }
+            changed.signal();
+        } finally {
+            lock.unlock();
+        }
+        return run;
+    }
+
+    /**
+     * 所有脚本的发送偏差统计
+     */
+    public LatencyRecorder getLateness() {
+        return lateness;
+    }
+
+    /**
+     * 关闭调度器，未发送的命令将被丢弃
+     */
+    public void shutdown() {
+        running = false;
+        lock.lock();
+        try {
+            for (Pending pending : queue) {
+                pending.run.skip();
+            }
+            queue.clear();
+            changed.signal();
+        } finally {
+            lock.unlock();
+        }
+        timerThread.interrupt();
+    }
+
+    private void timerLoop() {
+        while (running) {
+            Pending next;
+            lock.lock();
+            try {
+                next = queue.peek();
+                if (next == null) {
+                    changed.await();
+                    continue;
+                }
+                long remaining = next.deadlineNanos - System.nanoTime();
+                if (remaining > SPIN_THRESHOLD_NANOS) {
+                    long sleep = remaining - wakeupAdvanceNanos;
+                    if (sleep > 0) {
+                        long wakeAt = System.nanoTime() + sleep;
+                        changed.awaitNanos(sleep);
+                        long overshoot = System.nanoTime() - wakeAt;
+                        if (overshoot > 0) {
+                            // 只在按时醒来时更新，被新任务提前唤醒的情况不计入
+                            wakeupAdvanceNanos = Math.min(MAX_WAKEUP_ADVANCE_NANOS,
+                                (wakeupAdvanceNanos * 7 + overshoot) / 8);
+                        }
+                        continue;
+                    }
+                }
+                queue.poll();
+            } catch (InterruptedException e) {
+                if (!running) {
+                    return;
+                }
+                continue;
+            } finally {
+                lock.unlock();
+            }
+
+            while (System.nanoTime() < next.deadlineNanos) {
+                Thread.onSpinWait();
+            }
+            dispatch(next);
+        }
+    }
+
+    private void dispatch(Pending pending) {
+        if (pending.run.cancelled) {
+            pending.run.skip();
+            return;
+        }
+        DeviceAction action = pending.entry.getAction();
+        Runnable onStart = () -> {
+            // 命令开始写入设备时才计算偏差，排队等待其他命令的时间也算在内
+            long late = System.nanoTime() - pending.deadlineNanos;
+            lateness.record(late);
+            pending.run.lateness.record(late);
+        };
+        try {
+            action.submit(controller, CommandPriority.defaultFor(action.getCommand()), 0, onStart)
+                .whenComplete((ok, error) -> {
+                    if (error != null) {
+                        System.err.println("执行脚本命令失败: " + error.getMessage());
+                    }
+                    pending.run.finish(error == null && ok != null && ok);
+                });
+        } catch (RuntimeException e) {
+            System.err.println("执行脚本命令失败: " + e.getMessage());
+            pending.run.finish(false);
+        }
+    }
+
+    /**
+     * 队列中等待发送的命令
+     */
+    private static class Pending implements Comparable<Pending> {
+        final long deadlineNanos;
+        final long sequence;
+        final ScriptRun run;
+        final CommandScript.Entry entry;
+
+        Pending(long deadlineNanos, long sequence, ScriptRun run, CommandScript.Entry entry) {
+            this.deadlineNanos = deadlineNanos;
+            this.sequence = sequence;
+            this.run = run;
+            this.entry = entry;
+        }
+
+        @Override
+        public int compareTo(Pending other) {
+            int byDeadline = Long.compare(deadlineNanos - other.deadlineNanos, 0);
+            return byDeadline != 0 ? byDeadline : Long.compare(sequence, other.sequence);
+        }
+    }
+
+    /**
+     * 一次脚本运行
+     */
+    public class ScriptRun {
+        private final CommandScript script;
+        private final long startNanos;
+        private final LatencyRecorder lateness = new LatencyRecorder();
+        private final AtomicInteger remaining;
+        private final AtomicInteger succeeded = new AtomicInteger();
+        private final AtomicInteger failed = new AtomicInteger();
+        private final AtomicInteger skipped = new AtomicInteger();
+        private final CompletableFuture<ScriptRun> completion = new CompletableFuture<>();
+        private volatile boolean cancelled = false;
+
+        ScriptRun(CommandScript script, long startNanos) {
+            this.script = script;
+            this.startNanos = startNanos;
+            this.remaining = new AtomicInteger(script.getEntries().size());
+        }
+
+        /**
+         * 取消运行，尚未发送的命令将被丢弃
+         */
+        public void cancel() {
+            cancelled = true;
+            lock.lock();
+            try {
+                queue.removeIf(pending -> {
+                    if (pending.run == this) {
+                        skip();
+                        return true;
+                    }
+                    return false;
+                });
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * 运行结束时完成的Future
+         */
+        public CompletableFuture<ScriptRun> getCompletion() {
+            return completion;
+        }
+
+        public CommandScript getScript() {
+            return script;
+        }
+
+        /**
+         * 实际发送时间相对计划时间的偏差
+         */
+        public LatencyRecorder getLateness() {
+            return lateness;
+        }
+
+        public int getSucceeded() {
+            return succeeded.get();
+        }
+
+        public int getFailed() {
+            return failed.get();
+        }
+
+        public int getSkipped() {
+            return skipped.get();
+        }
+
+        /**
+         * 生成运行报告
+         */
+        public String report() {
+            return String.format("脚本 %s: 成功 %d, 失败 %d, 跳过 %d%n  发送偏差 - %s",
+                script.getName(), getSucceeded(), getFailed(), getSkipped(), lateness.summary());
+        }
+
+        private void finish(boolean success) {
+            (success ? succeeded : failed).incrementAndGet();
+            countDown();
+        }
+
+        private void skip() {
+            skipped.incrementAndGet();
+            countDown();
+        }
+
+        private void countDown() {
+            if (remaining.decrementAndGet() == 0) {
+                completion.complete(this);
+            }
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package github.nooblong;
+
+/**
+ * 窗口聚合
+ * 每收集N个样本输出一次聚合值 (平均值、最小值或最大值)，窗口之间不重叠
+ */
+public class WindowAggregateStage implements SensorStage {
+
+    /**
+     * 聚合方式
+     */
+    public enum Mode {
+        MEAN, MIN, MAX
+    }
+
+    private final int windowSize;
+    private final Mode mode;
+    private int count = 0;
+    private double sum = 0;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+
+    public WindowAggregateStage(int windowSize, Mode mode) {
+        if (windowSize < 1) {
+            throw new IllegalArgumentException("窗口大小必须大于0: " + windowSize);
+        }
+        this.windowSize = windowSize;
+        this.mode = mode;
+    }
+
+    @Override
+    public double process(double value) {
+        count++;
+        sum += value;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+        if (count < windowSize) {
+            return Double.NaN;
+        }
+
+        double result;
+        switch (mode) {
+            case MIN:
+                result = min;
+                break;
+            case MAX:
+                result = max;
+                break;
+            default:
+                result = sum / count;
+        }
+        reset();
+        return result;
+    }
+
+    @Override
+    public void reset() {
+        count = 0;
+        sum = 0;
+        min = Double.POSITIVE_INFINITY;
+        max = Double.NEGATIVE_INFINITY;
+    }
+}